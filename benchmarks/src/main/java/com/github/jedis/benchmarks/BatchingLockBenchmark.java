@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.benchmarks;
+
+import com.github.jedis.lock.BatchingLockCommand;
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.LockCommand;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 大量线程无竞争取锁/解锁时BatchingLockCommand与逐个借用连接的对比,每个线程使用独立的锁;
+ * command为batching时所有线程的脚本合并为pipeline,仅占用connections条连接
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 5:00 下午
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+public class BatchingLockBenchmark {
+    @Param({"pool", "batching"})
+    private String command;
+    @Param({"2"})
+    private int connections;
+    private RedisNodes nodes;
+    private LockCommand client;
+    private JedisLockManager manager;
+
+    @Setup
+    public void setup() {
+        nodes = new RedisNodes(1);
+        if ("batching".equals(command)) {
+            client = new BatchingLockCommand(nodes.getPool(), 128, connections, 0L, TimeUnit.MICROSECONDS);
+            manager = new JedisLockManager(client);
+            return;
+        }
+        manager = new JedisLockManager(nodes.getPool());
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+        if (Objects.nonNull(client)) {
+            client.close();
+        }
+        nodes.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadLock {
+        private static final AtomicInteger SEQUENCE = new AtomicInteger();
+        private JedisLock lock;
+
+        @Setup
+        public void setup(BatchingLockBenchmark benchmark) {
+            lock = benchmark.manager.getLock("batching-" + SEQUENCE.incrementAndGet());
+        }
+    }
+
+    @Benchmark
+    public void lockUnlock(ThreadLock state) {
+        state.lock.lock();
+        state.lock.unlock();
+    }
+
+    @Benchmark
+    public boolean tryLock(ThreadLock state) {
+        boolean result = state.lock.tryLock();
+        if (result) {
+            state.lock.unlock();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.benchmarks;
+
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单点模式下多个线程竞争同一把锁
+ * <p>
+ * 线程交替使用managers个JedisLockManager,模拟多个JVM之间的竞争:同一manager内的线程在本地排队,
+ * 不同manager之间通过redis订阅唤醒;managers为1时仅有本地竞争
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/8 11:00 上午
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class ContendedLockBenchmark {
+    @Param({"1", "2"})
+    private int managers;
+    @Param({"false", "true"})
+    private boolean fair;
+    private RedisNodes nodes;
+    private JedisLockManager[] lockManagers;
+    private JedisLock[] locks;
+    private AtomicInteger sequence = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        nodes = new RedisNodes(1);
+        lockManagers = new JedisLockManager[managers];
+        locks = new JedisLock[managers];
+        for (int i = 0; i < managers; i++) {
+            JedisLockManager manager = new JedisLockManager(nodes.getPool());
+            lockManagers[i] = manager;
+            locks[i] = fair ? manager.getFairLock("contended") : manager.getLock("contended");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (JedisLockManager manager : lockManagers) {
+            manager.shutdown();
+        }
+        nodes.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadLock {
+        private JedisLock lock;
+
+        @Setup
+        public void setup(ContendedLockBenchmark benchmark) {
+            lock = benchmark.locks[benchmark.sequence.getAndIncrement() % benchmark.managers];
+        }
+    }
+
+    @Benchmark
+    public void lockUnlock(ThreadLock state) {
+        state.lock.lock();
+        state.lock.unlock();
+    }
+
+    @Benchmark
+    public boolean tryLock(ThreadLock state) {
+        boolean result = state.lock.tryLock();
+        if (result) {
+            state.lock.unlock();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void lockAsync(ThreadLock state) {
+        state.lock.lockAsync().join();
+        state.lock.unlockAsync().join();
+    }
+}
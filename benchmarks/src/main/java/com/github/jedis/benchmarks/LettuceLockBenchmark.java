@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.benchmarks;
+
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.LettuceLockCommand;
+import com.github.jedis.lock.LockCommand;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import org.openjdk.jmh.annotations.*;
+import redis.clients.jedis.HostAndPort;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 无竞争取锁/解锁时LettuceLockCommand与Jedis连接池的对比,每个线程使用独立的锁;
+ * client为lettuce时所有锁共享一条多路复用连接,异步方法由evalsha的回调直接完成,不占用线程
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 5:30 下午
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class LettuceLockBenchmark {
+    @Param({"jedis", "lettuce"})
+    private String client;
+    private RedisNodes nodes;
+    private RedisClient redisClient;
+    private LockCommand command;
+    private JedisLockManager manager;
+
+    @Setup
+    public void setup() {
+        nodes = new RedisNodes(1);
+        if ("lettuce".equals(client)) {
+            HostAndPort address = nodes.getAddress();
+            redisClient = RedisClient.create(RedisURI.create(address.getHost(), address.getPort()));
+            command = new LettuceLockCommand(redisClient);
+            manager = new JedisLockManager(command);
+            return;
+        }
+        manager = new JedisLockManager(nodes.getPool());
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+        if (Objects.nonNull(command)) {
+            command.close();
+            redisClient.shutdown();
+        }
+        nodes.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadLock {
+        private static final AtomicInteger SEQUENCE = new AtomicInteger();
+        private JedisLock lock;
+
+        @Setup
+        public void setup(LettuceLockBenchmark benchmark) {
+            lock = benchmark.manager.getLock("lettuce-" + SEQUENCE.incrementAndGet());
+        }
+    }
+
+    @Benchmark
+    public void lockUnlock(ThreadLock state) {
+        state.lock.lock();
+        state.lock.unlock();
+    }
+
+    @Benchmark
+    public void lockAsync(ThreadLock state) {
+        state.lock.lockAsync().join();
+        state.lock.unlockAsync().join();
+    }
+
+    @Benchmark
+    public boolean tryLockAsync(ThreadLock state) {
+        boolean result = state.lock.tryLockAsync().join();
+        if (result) {
+            state.lock.unlockAsync().join();
+        }
+        return result;
+    }
+}
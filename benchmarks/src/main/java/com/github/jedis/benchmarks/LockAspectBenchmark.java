@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.benchmarks;
+
+import com.github.jedis.lock.DistributedLock;
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.LockAspect;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 注解方式的额外开销,对比通过LockAspect代理调用与直接调用lock/unlock包裹的同一方法
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/8 11:30 上午
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LockAspectBenchmark {
+    private RedisNodes nodes;
+    private AnnotationConfigApplicationContext context;
+    private Service proxy;
+    private Service target = new Service();
+    private JedisLockManager manager;
+    private JedisLock lock;
+
+    @Setup
+    public void setup() {
+        nodes = new RedisNodes(1);
+        manager = new JedisLockManager(nodes.getPool());
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(JedisLockManager.class, () -> manager);
+        context.register(AspectConfiguration.class);
+        context.refresh();
+        proxy = context.getBean(Service.class);
+        lock = manager.getLock(Service.LOCK_NAME);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        manager.shutdown();
+        nodes.close();
+    }
+
+    /**
+     * 不加锁的目标方法,作为基线
+     *
+     * @return
+     */
+    @Benchmark
+    public int baseline() {
+        return target.execute(1);
+    }
+
+    @Benchmark
+    public int manual() {
+        lock.lock();
+        try {
+            return target.execute(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    public int annotated() {
+        return proxy.execute(1);
+    }
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    public static class AspectConfiguration {
+        @Bean
+        public LockAspect lockAspect() {
+            return new LockAspect();
+        }
+
+        @Bean
+        public Service service() {
+            return new Service();
+        }
+    }
+
+    public static class Service {
+        private static final String LOCK_NAME = "aspect";
+
+        @DistributedLock(name = LOCK_NAME)
+        public int execute(int value) {
+            return value + 1;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.benchmarks;
+
+import com.github.jedis.lock.InMemoryLockCommand;
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单点模式下无竞争的取锁/解锁,每个线程使用独立的锁,耗时即单次redis往返加上客户端开销;
+ * backend为memory时使用InMemoryLockCommand,作为不含网络往返的基线
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/8 10:45 上午
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LockBenchmark {
+    @Param({"redis", "memory"})
+    private String backend;
+    private RedisNodes nodes;
+    private InMemoryLockCommand command;
+    private JedisLockManager manager;
+
+    @Setup
+    public void setup() {
+        if ("memory".equals(backend)) {
+            command = new InMemoryLockCommand();
+            manager = new JedisLockManager(command);
+            return;
+        }
+        nodes = new RedisNodes(1);
+        manager = new JedisLockManager(nodes.getPool());
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+        if (Objects.nonNull(command)) {
+            command.close();
+        }
+        if (Objects.nonNull(nodes)) {
+            nodes.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadLock {
+        private static final AtomicInteger SEQUENCE = new AtomicInteger();
+        private JedisLock lock;
+
+        @Setup
+        public void setup(LockBenchmark benchmark) {
+            lock = benchmark.manager.getLock("uncontended-" + SEQUENCE.incrementAndGet());
+        }
+    }
+
+    @Benchmark
+    public void lockUnlock(ThreadLock state) {
+        state.lock.lock();
+        state.lock.unlock();
+    }
+
+    @Benchmark
+    public boolean tryLock(ThreadLock state) {
+        boolean result = state.lock.tryLock();
+        if (result) {
+            state.lock.unlock();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public boolean tryLockTimeout(ThreadLock state) {
+        boolean result = state.lock.tryLock(100, TimeUnit.MILLISECONDS);
+        if (result) {
+            state.lock.unlock();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void lockAsync(ThreadLock state) {
+        state.lock.lockAsync().join();
+        state.lock.unlockAsync().join();
+    }
+
+    @Benchmark
+    public boolean tryLockAsync(ThreadLock state) {
+        boolean result = state.lock.tryLockAsync().join();
+        if (result) {
+            state.lock.unlockAsync().join();
+        }
+        return result;
+    }
+}
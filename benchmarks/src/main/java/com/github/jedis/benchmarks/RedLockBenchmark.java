@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.benchmarks;
+
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 红锁模式下的取锁/解锁,各个子锁并行访问,无竞争时耗时取决于第N/2+1快的节点
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/8 11:20 上午
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RedLockBenchmark {
+    @Param({"3", "5"})
+    private int nodeCount;
+    private RedisNodes nodes;
+    private JedisLockManager manager;
+
+    @Setup
+    public void setup() {
+        nodes = new RedisNodes(nodeCount);
+        manager = new JedisLockManager(nodes.getPools());
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+        nodes.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadLock {
+        private static final AtomicInteger SEQUENCE = new AtomicInteger();
+        private JedisLock lock;
+
+        @Setup
+        public void setup(RedLockBenchmark benchmark) {
+            lock = benchmark.manager.getLock("red-" + SEQUENCE.incrementAndGet());
+        }
+    }
+
+    @Benchmark
+    public void lockUnlock(ThreadLock state) {
+        state.lock.lock();
+        state.lock.unlock();
+    }
+
+    @Benchmark
+    public boolean tryLock(ThreadLock state) {
+        boolean result = state.lock.tryLock();
+        if (result) {
+            state.lock.unlock();
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void lockAsync(ThreadLock state) {
+        state.lock.lockAsync().join();
+        state.lock.unlockAsync().join();
+    }
+
+    /**
+     * 多个线程竞争同一把红锁
+     *
+     * @param state
+     */
+    @Benchmark
+    @Threads(4)
+    public void contendedLockUnlock(ContendedLock state) {
+        state.lock.lock();
+        state.lock.unlock();
+    }
+
+    @State(Scope.Benchmark)
+    public static class ContendedLock {
+        private JedisLock lock;
+
+        @Setup
+        public void setup(RedLockBenchmark benchmark) {
+            lock = benchmark.manager.getLock("red-contended");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.benchmarks;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.util.Pool;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 基准测试使用的redis节点
+ * <p>
+ * 缺省在本地随机端口启动内置的redis-server,不依赖外部环境;
+ * 指定-Dredis.nodes=host:port,host:port时改为使用已有的节点,节点数量不能少于所需数量,测试前会清空数据
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/8 10:30 上午
+ */
+public class RedisNodes implements AutoCloseable {
+    private List<RedisServer> servers = new ArrayList<>();
+    private List<JedisPool> pools = new ArrayList<>();
+    private List<HostAndPort> hosts = new ArrayList<>();
+
+    public RedisNodes(int count) {
+        String nodes = System.getProperty("redis.nodes");
+        String[] addresses = Objects.isNull(nodes) ? new String[0] : nodes.split(",");
+        if (Objects.nonNull(nodes) && addresses.length < count) {
+            throw new IllegalArgumentException(String.format("%s redis nodes are required", count));
+        }
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(256);
+        config.setMaxIdle(256);
+        try {
+            for (int i = 0; i < count; i++) {
+                String host = "127.0.0.1";
+                int port;
+                if (Objects.nonNull(nodes)) {
+                    String[] address = addresses[i].trim().split(":");
+                    host = address[0];
+                    port = Integer.parseInt(address[1]);
+                } else {
+                    port = freePort();
+                    RedisServer server = RedisServer.builder().port(port).setting("bind 127.0.0.1")
+                            .setting("save \"\"").build();
+                    servers.add(server);
+                    server.start();
+                }
+                hosts.add(new HostAndPort(host, port));
+                JedisPool pool = new JedisPool(config, host, port);
+                pools.add(pool);
+                try (Jedis jedis = pool.getResource()) {
+                    jedis.flushAll();
+                }
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public List<Pool> getPools() {
+        return new ArrayList<>(pools);
+    }
+
+    public Pool getPool() {
+        return pools.get(0);
+    }
+
+    /**
+     * 返回第一个节点的地址,供非Jedis客户端(如Lettuce)连接
+     *
+     * @return
+     */
+    public HostAndPort getAddress() {
+        return hosts.get(0);
+    }
+
+    @Override
+    public void close() {
+        pools.forEach(JedisPool::close);
+        servers.forEach(RedisServer::stop);
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
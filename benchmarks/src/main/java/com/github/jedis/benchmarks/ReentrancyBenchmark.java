@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.benchmarks;
+
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按指定深度重入后逐层解锁,单次操作包含depth次取锁和depth次解锁
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/8 11:10 上午
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReentrancyBenchmark {
+    @Param({"1", "4", "16"})
+    private int depth;
+    private RedisNodes nodes;
+    private JedisLockManager manager;
+    private JedisLock lock;
+
+    @Setup
+    public void setup() {
+        nodes = new RedisNodes(1);
+        manager = new JedisLockManager(nodes.getPool());
+        lock = manager.getLock("reentrant");
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+        nodes.close();
+    }
+
+    @Benchmark
+    public void reentrant() {
+        for (int i = 0; i < depth; i++) {
+            lock.lock();
+        }
+        for (int i = 0; i < depth; i++) {
+            lock.unlock();
+        }
+    }
+}
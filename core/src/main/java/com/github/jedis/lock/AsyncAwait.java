@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 闭锁、栅栏的异步等待任务
+ * <p>
+ * 先登记为订阅通道上的异步等待者再检查状态,收到消息(或订阅生效、重连)及超时定时器到期时在watchdog的异步线程组中重新检查,
+ * 等待期间不占用线程。多个信号合并为一次执行,同一时刻只有一个线程推进该任务;完成或被调用方取消后退订
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/16 3:20 下午
+ */
+abstract class AsyncAwait<T> implements Runnable {
+    protected final CompletableFuture<T> future = new CompletableFuture<>();
+    private final String channel;
+    private final SubscribeListener listener;
+    private final SubscribeHub hub;
+    private final LockWatchDog watchDog;
+    /**
+     * 未处理的信号数量,从0变为1的一方负责提交执行
+     */
+    private final AtomicInteger signals = new AtomicInteger();
+    private final long time;
+    private final TimeUnit unit;
+    private volatile boolean expired;
+
+    /**
+     * @param channel
+     * @param listener
+     * @param hub
+     * @param watchDog
+     * @param time     小于0时表示一直等待
+     * @param unit
+     */
+    protected AsyncAwait(String channel, SubscribeListener listener, SubscribeHub hub, LockWatchDog watchDog,
+                         long time, TimeUnit unit) {
+        this.channel = channel;
+        this.listener = listener;
+        this.hub = hub;
+        this.watchDog = watchDog;
+        this.time = time;
+        this.unit = Objects.requireNonNull(unit);
+    }
+
+    protected CompletableFuture<T> start() {
+        //先订阅再检查,避免错过检查之后发布的消息
+        SubscribeListener.Waiter waiter = listener.subscribe(this::signal);
+        hub.subscribe(channel, listener);
+        LockWatchDog.Lease timer = null;
+        if (time == 0) {
+            expired = true;
+        } else if (time > 0) {
+            timer = watchDog.scheduleOnce(() -> {
+                expired = true;
+                signal();
+            }, time, unit);
+        }
+        LockWatchDog.Lease lease = timer;
+        future.whenComplete((v, e) -> {
+            if (Objects.nonNull(lease)) {
+                lease.cancel();
+            }
+            listener.unsubscribe(waiter);
+            hub.unsubscribe(channel);
+            if (future.isCancelled()) {
+                cancelled();
+            }
+        });
+        signal();
+        return future;
+    }
+
+    private void signal() {
+        if (signals.getAndIncrement() == 0) {
+            try {
+                watchDog.execute(this);
+            } catch (RejectedExecutionException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        int missed = signals.get();
+        while (true) {
+            if (!future.isDone()) {
+                try {
+                    check(expired);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+            missed = signals.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 检查状态,满足条件或已超时时完成future
+     *
+     * @param expired 是否已超时
+     */
+    protected abstract void check(boolean expired);
+
+    /**
+     * 调用方取消等待后回调
+     */
+    protected void cancelled() {
+    }
+
+    /**
+     * 在异步线程组中执行清理任务
+     *
+     * @param task
+     */
+    protected void execute(Runnable task) {
+        try {
+            watchDog.execute(task);
+        } catch (RejectedExecutionException e) {
+            //...
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * 支持非阻塞调用的LockCommand
+ * <p>
+ * 脚本的返回值及异常类型与同步方法保持一致(脚本未缓存时为JedisNoScriptException);
+ * 订阅由客户端在独立的连接上异步完成,SubscribeHub不再占用阻塞线程
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/4 2:15 下午
+ */
+public interface AsyncLockCommand extends LockCommand {
+    CompletableFuture<Object> evalAsync(byte[] script, int keyCount, byte[]... params);
+
+    CompletableFuture<Object> evalshaAsync(byte[] sha, int keyCount, byte[]... params);
+
+    /**
+     * 建立订阅连接,每个数据源仅调用一次;断线后由客户端自动重连并恢复已订阅的通道
+     *
+     * @param listener   消息回调,入参为通道和消息内容
+     * @param disconnect 断线回调
+     * @param reconnect  重连成功回调
+     */
+    void listen(BiConsumer<String, String> listener, Runnable disconnect, Runnable reconnect);
+
+    /**
+     * 订阅目标通道,redis确认订阅后完成
+     *
+     * @param channel
+     * @return
+     */
+    CompletableFuture<Void> subscribeAsync(String channel);
+
+    CompletableFuture<Void> unsubscribeAsync(String channel);
+}
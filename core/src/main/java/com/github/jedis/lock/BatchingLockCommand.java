@@ -0,0 +1,373 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import redis.clients.jedis.*;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.Pool;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 自动批量执行脚本的LockCommand装饰器
+ * <p>
+ * 并发调用二进制参数的eval/evalsha时,请求先进入目标节点的队列,由其中一个调用线程作为leader从连接池借用一条连接,
+ * 将队列中的请求以pipeline的方式一次性发送,再把结果分发给各个调用线程;leader执行期间到达的请求在下一批中发送,
+ * 因此负载越高批次越大,空闲时单个请求也无需额外等待。每个节点同时执行的pipeline不超过connections个,
+ * 大量线程并发取锁时只需占用少量连接。集群模式下按第一个key所在的slot路由到对应节点,各节点独立批量,
+ * 节点迁移(MOVED/ASK)时刷新本地slot表,当次请求交由JedisCluster执行。
+ * 订阅、脚本加载以及String参数的脚本直接由被装饰的LockCommand执行
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/3 3:10 下午
+ */
+public class BatchingLockCommand implements LockCommand {
+    private static final int DEFAULT_MAX_BATCH_SIZE = 128;
+    private static final int DEFAULT_CONNECTIONS = 2;
+    private LockCommand delegate;
+    /**
+     * 非集群模式下的目标连接池
+     */
+    private Pool pool;
+    /**
+     * 集群模式下的slot路由表
+     */
+    private ClusterSlots slots;
+    private int maxBatchSize;
+    private int connections;
+    private long maxDelayNanos;
+    private Map<Pool, Batcher> batchers = new ConcurrentHashMap<>();
+
+    public BatchingLockCommand(Pool pool) {
+        this(pool, DEFAULT_MAX_BATCH_SIZE, DEFAULT_CONNECTIONS, 0L, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @param pool
+     * @param maxBatchSize 单个pipeline最多包含的请求数
+     * @param connections  同时执行的pipeline数量上限,即批量执行时最多占用的连接数
+     * @param maxDelay     leader发送前等待更多请求加入的时间,为0时不等待,批次大小随负载自适应
+     * @param unit
+     */
+    public BatchingLockCommand(Pool pool, int maxBatchSize, int connections, long maxDelay, TimeUnit unit) {
+        this(new NonClusterLockCommand(Objects.requireNonNull(pool)), maxBatchSize, connections, maxDelay, unit);
+        this.pool = pool;
+    }
+
+    public BatchingLockCommand(JedisCluster jedisCluster) {
+        this(jedisCluster, DEFAULT_MAX_BATCH_SIZE, DEFAULT_CONNECTIONS, 0L, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @param jedisCluster
+     * @param maxBatchSize 单个pipeline最多包含的请求数
+     * @param connections  每个节点同时执行的pipeline数量上限
+     * @param maxDelay     leader发送前等待更多请求加入的时间,为0时不等待,批次大小随负载自适应
+     * @param unit
+     */
+    public BatchingLockCommand(JedisCluster jedisCluster, int maxBatchSize, int connections, long maxDelay,
+                               TimeUnit unit) {
+        this(new ClusterLockCommand(Objects.requireNonNull(jedisCluster)), maxBatchSize, connections, maxDelay, unit);
+        this.slots = new ClusterSlots(jedisCluster);
+        slots.refresh();
+    }
+
+    private BatchingLockCommand(LockCommand delegate, int maxBatchSize, int connections, long maxDelay,
+                                TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        if (maxBatchSize <= 0 || connections <= 0 || maxDelay < 0) {
+            throw new IllegalArgumentException("Parameter maxBatchSize and connections must be > 0, " +
+                    "maxDelay must be >= 0");
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.connections = connections;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    @Override
+    public Object eval(String script, int keyCount, String... params) {
+        return delegate.eval(script, keyCount, params);
+    }
+
+    @Override
+    public String scriptLoad(String script) {
+        return delegate.scriptLoad(script);
+    }
+
+    @Override
+    public Object evalsha(String script, int keyCount, String... params) {
+        return delegate.evalsha(script, keyCount, params);
+    }
+
+    @Override
+    public Object eval(byte[] script, int keyCount, byte[]... params) {
+        return submit(new Request(true, script, keyCount, params));
+    }
+
+    @Override
+    public Object evalsha(byte[] sha, int keyCount, byte[]... params) {
+        return submit(new Request(false, sha, keyCount, params));
+    }
+
+    @Override
+    public void subscribe(Runnable callBack, JedisPubSub jedisPubSub, String... channels) {
+        delegate.subscribe(callBack, jedisPubSub, channels);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public void setMetrics(LockMetrics metrics) {
+        delegate.setMetrics(metrics);
+    }
+
+    private Object submit(Request request) {
+        Pool target = route(request);
+        if (Objects.nonNull(target)) {
+            batchers.computeIfAbsent(target, Batcher::new).submit(request);
+            if (!request.redirected) {
+                if (Objects.nonNull(request.error)) {
+                    throw request.error;
+                }
+                return request.result;
+            }
+        }
+        return request.eval ? delegate.eval(request.script, request.keyCount, request.params) :
+                delegate.evalsha(request.script, request.keyCount, request.params);
+    }
+
+    /**
+     * 返回请求的目标连接池,无法确定时返回null,由被装饰的LockCommand执行
+     *
+     * @param request
+     * @return
+     */
+    private Pool route(Request request) {
+        if (Objects.nonNull(pool)) {
+            return pool;
+        }
+        if (request.keyCount <= 0) {
+            return null;
+        }
+        return slots.get(JedisClusterCRC16.getSlot(request.params[0]));
+    }
+
+    private void refreshSlots() {
+        if (Objects.nonNull(slots)) {
+            slots.refresh();
+        }
+    }
+
+    private static class Request {
+        private boolean eval;
+        private byte[] script;
+        private int keyCount;
+        private byte[][] params;
+        private Thread thread = Thread.currentThread();
+        private volatile boolean done;
+        private Object result;
+        private RuntimeException error;
+        /**
+         * 集群节点迁移,需要由JedisCluster重新执行
+         */
+        private boolean redirected;
+
+        private Request(boolean eval, byte[] script, int keyCount, byte[][] params) {
+            this.eval = eval;
+            this.script = script;
+            this.keyCount = keyCount;
+            this.params = params;
+        }
+
+        private void complete(Object result, RuntimeException error) {
+            this.result = result;
+            this.error = error;
+            done = true;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * 单个节点的批量执行队列
+     */
+    private class Batcher {
+        private Pool pool;
+        private Queue<Request> queue = new ConcurrentLinkedQueue<>();
+        private AtomicInteger pending = new AtomicInteger();
+        private AtomicInteger flushers = new AtomicInteger();
+
+        private Batcher(Pool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * 提交请求并等待执行完成,当前没有空闲的pipeline时由其他leader代为执行
+         *
+         * @param request
+         */
+        private void submit(Request request) {
+            queue.offer(request);
+            pending.incrementAndGet();
+            boolean interrupted = false;
+            while (!request.done) {
+                if (!tryFlush()) {
+                    LockSupport.park(this);
+                    interrupted |= Thread.interrupted();//中断时不放弃已提交的请求,等待完成后恢复中断状态
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean tryFlush() {
+            int current;
+            do {
+                current = flushers.get();
+                if (current >= connections) {
+                    return false;
+                }
+            } while (!flushers.compareAndSet(current, current + 1));
+            try {
+                if (maxDelayNanos > 0 && pending.get() < maxBatchSize) {
+                    LockSupport.parkNanos(this, maxDelayNanos);
+                }
+                List<Request> batch = new ArrayList<>(Math.min(pending.get(), maxBatchSize));
+                Request request;
+                while (batch.size() < maxBatchSize && Objects.nonNull(request = queue.poll())) {
+                    pending.decrementAndGet();
+                    batch.add(request);
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } finally {
+                flushers.decrementAndGet();
+            }
+            //先释放名额再检查队列,确保名额已满时入队的请求总能被某个线程执行
+            Request next = queue.peek();
+            if (Objects.nonNull(next)) {
+                LockSupport.unpark(next.thread);
+            }
+            return true;
+        }
+
+        private void flush(List<Request> batch) {
+            Jedis jedis = null;
+            try {
+                jedis = (Jedis) pool.getResource();
+                Pipeline pipeline = jedis.pipelined();
+                List<Response<Object>> responses = new ArrayList<>(batch.size());
+                for (Request request : batch) {
+                    responses.add(request.eval ? pipeline.eval(request.script, request.keyCount, request.params) :
+                            pipeline.evalsha(request.script, request.keyCount, request.params));
+                }
+                pipeline.sync();
+                for (int i = 0; i < batch.size(); i++) {
+                    Request request = batch.get(i);
+                    try {
+                        request.complete(responses.get(i).get(), null);
+                    } catch (JedisRedirectionException e) {
+                        refreshSlots();
+                        request.redirected = true;
+                        request.complete(null, null);
+                    } catch (RuntimeException e) {
+                        request.complete(null, e);
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (e instanceof JedisConnectionException) {
+                    refreshSlots();
+                }
+                batch.stream().filter(request -> !request.done).forEach(request -> request.complete(null, e));
+            } finally {
+                if (Objects.nonNull(jedis)) {
+                    jedis.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 集群slot与节点连接池的映射,通过CLUSTER SLOTS获取,节点迁移或连接失败时刷新
+     */
+    private static class ClusterSlots {
+        private static final int SLOT_COUNT = 16384;
+        private JedisCluster jedisCluster;
+        private volatile Pool[] slots = new Pool[SLOT_COUNT];
+        private AtomicBoolean refreshing = new AtomicBoolean();
+
+        private ClusterSlots(JedisCluster jedisCluster) {
+            this.jedisCluster = jedisCluster;
+        }
+
+        private Pool get(int slot) {
+            return slots[slot];
+        }
+
+        /**
+         * 刷新slot表,已有线程在刷新时直接返回,期间未命中的请求由JedisCluster执行
+         */
+        @SuppressWarnings("unchecked")
+        private void refresh() {
+            if (!refreshing.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Map<String, JedisPool> nodes = jedisCluster.getClusterNodes();
+                for (JedisPool node : nodes.values()) {
+                    try (Jedis jedis = node.getResource()) {
+                        Pool[] table = new Pool[SLOT_COUNT];
+                        for (Object slot : jedis.clusterSlots()) {
+                            List<Object> range = (List<Object>) slot;
+                            List<Object> master = (List<Object>) range.get(2);
+                            Pool target = nodes.get(String.format("%s:%s", SafeEncoder.encode((byte[]) master.get(0)),
+                                    master.get(1)));
+                            for (int i = ((Long) range.get(0)).intValue(); i <= ((Long) range.get(1)).intValue(); i++) {
+                                table[i] = target;
+                            }
+                        }
+                        slots = table;
+                        return;
+                    } catch (JedisException e) {
+                        //...节点不可用时尝试下一个节点
+                    }
+                }
+            } finally {
+                refreshing.set(false);
+            }
+        }
+    }
+}
@@ -15,9 +15,13 @@
  */
 package com.github.jedis.lock;
 
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
 
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -29,6 +33,7 @@ import java.util.concurrent.TimeUnit;
  */
 public class ClusterLockCommand implements LockCommand {
     private JedisCluster jedisCluster;
+    private volatile LockMetrics metrics = LockMetrics.NOOP;
 
     protected ClusterLockCommand(JedisCluster jedisCluster) {
         this.jedisCluster = jedisCluster;
@@ -39,9 +44,23 @@ public class ClusterLockCommand implements LockCommand {
         return jedisCluster.eval(script, keyCount, params);
     }
 
+    /**
+     * 将脚本加载到集群中的每一个节点,而非仅加载到脚本字符串所在slot的节点
+     *
+     * @param script
+     * @return
+     */
     @Override
     public String scriptLoad(String script) {
-        return jedisCluster.scriptLoad(script, script);
+        String sha = null;
+        for (JedisPool pool : jedisCluster.getClusterNodes().values()) {
+            try (Jedis jedis = pool.getResource()) {
+                sha = jedis.scriptLoad(script);
+            } catch (JedisException e) {
+                //...节点不可用时跳过,执行时回退为eval
+            }
+        }
+        return sha;
     }
 
     @Override
@@ -49,17 +68,34 @@ public class ClusterLockCommand implements LockCommand {
         return jedisCluster.evalsha(script, keyCount, params);
     }
 
+    @Override
+    public Object eval(byte[] script, int keyCount, byte[]... params) {
+        return jedisCluster.eval(script, keyCount, params);
+    }
+
+    @Override
+    public Object evalsha(byte[] sha, int keyCount, byte[]... params) {
+        return jedisCluster.evalsha(sha, keyCount, params);
+    }
+
+    @Override
+    public void setMetrics(LockMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
     @Override
     public void subscribe(Runnable callBack, JedisPubSub jedisPubSub, String... channels) {
-        while (true) {
+        while (!Thread.currentThread().isInterrupted()) {
             try {
                 jedisCluster.subscribe(jedisPubSub, channels);
+                return;//退订全部通道后退出
             } catch (Throwable e) {
+                metrics.onError(null, e);
                 callBack.run();
                 try {
                     TimeUnit.SECONDS.sleep(1);//断线重连
                 } catch (InterruptedException interruptedException) {
-                    //...
+                    Thread.currentThread().interrupt();
                 }
             }
         }
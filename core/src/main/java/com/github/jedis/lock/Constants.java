@@ -0,0 +1,482 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+/**
+ * 缺省静态常量相关类
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/3 6:03 下午
+ */
+public class Constants {
+    /**
+     * 获取分布式锁脚本
+     * 如果成功获取到锁资源返回-1,反之为pttl
+     * KEY[1]:大Key,ARGV[1]:小Key,ARGV[2]:过期时间
+     * <p>
+     * Cluster模式下不支持多参数,否则会触发异常"CROSSSLOT Keys in request don't hash to the same slot"
+     * <p>
+     * CROSSSLOT Keys in request don't hash to the same slot
+     */
+    public static final String ACQUIRE_LOCK_SCRIPT = "if (redis.call('EXISTS', KEYS[1]) == 0) then " +
+            "redis.call('HINCRBY', KEYS[1], ARGV[1], 1); " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "return -1; " +
+            "end; " +
+            "if (redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1) then " +
+            "redis.call('HINCRBY', KEYS[1], ARGV[1], 1); " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "return -1; " +
+            "end; " +
+            "return redis.call('PTTL', KEYS[1]);";
+    /**
+     * 解锁脚本,完全解锁成功返回1,一次解锁成功返回2,解锁失败返回0
+     */
+    public static final String ACQUIRE_UNLOCK_SCRIPT = "if (redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1) then " +
+            "redis.call('HINCRBY', KEYS[1], ARGV[1], -1); " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "if (tonumber(redis.call('HGET', KEYS[1], ARGV[1])) < 1) then " +
+            "redis.call('DEL', KEYS[1]); " +
+            "redis.call('PUBLISH', KEYS[1], 1); " +
+            "return 1; " +
+            "end; " +
+            "return 2; " +
+            "end; " +
+            "return 0;";
+    /**
+     * 本地移交解锁脚本,完全解锁时不删除锁,而是将锁直接移交给ARGV[3]对应的访问者,不发布解锁消息
+     * 移交成功返回3,一次解锁成功返回2,解锁失败返回0
+     */
+    public static final String HANDOFF_UNLOCK_SCRIPT = "if (redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1) then " +
+            "if (redis.call('HINCRBY', KEYS[1], ARGV[1], -1) < 1) then " +
+            "redis.call('HDEL', KEYS[1], ARGV[1]); " +
+            "redis.call('HSET', KEYS[1], ARGV[3], 1); " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "return 3; " +
+            "end; " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "return 2; " +
+            "end; " +
+            "return 0;";
+    /**
+     * 暴力解锁脚本,解锁成功返回1,反之返回0
+     */
+    public static final String ACQUIRE_FORCE_UNLOCK_SCRIPT = "if (redis.call('DEL', KEYS[1]) == 1) then " +
+            "redis.call('PUBLISH', KEYS[1], 1); " +
+            "return 1; " +
+            "end; " +
+            "return 0;";
+
+    /**
+     * 每隔10秒刷新当前锁ttl脚本
+     */
+    public static final String UPDATE_LOCK_TTL_SCRIPT = "if (redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1) then " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "end;";
+    /**
+     * 公平锁清理过期等待者片段,等待队列KEYS[2]中超过KEYS[3]记录的超时时间仍未取锁的队首视为失效
+     */
+    private static final String FAIR_REMOVE_STALE_WAITERS = "while true do " +
+            "local head = redis.call('LINDEX', KEYS[2], 0); " +
+            "if head == false then break; end; " +
+            "local timeout = tonumber(redis.call('ZSCORE', KEYS[3], head)); " +
+            "if timeout == nil or timeout <= tonumber(ARGV[4]) then " +
+            "redis.call('ZREM', KEYS[3], head); " +
+            "redis.call('LPOP', KEYS[2]); " +
+            "else break; end; " +
+            "end; ";
+    /**
+     * 公平锁通知队首等待者片段,每个等待者拥有独立通道KEYS[1]:visitorId
+     */
+    private static final String FAIR_NOTIFY_HEAD = "local next = redis.call('LINDEX', KEYS[2], 0); " +
+            "if next ~= false then " +
+            "redis.call('PUBLISH', KEYS[1] .. ':' .. next, 1); " +
+            "end; ";
+    /**
+     * 获取公平锁脚本,成功获取到锁资源返回-1,反之返回预计等待时间
+     * KEYS[1]:锁,KEYS[2]:等待队列,KEYS[3]:等待者超时时间
+     * ARGV[1]:visitorId,ARGV[2]:过期时间,ARGV[3]:等待者超时时间,ARGV[4]:当前时间,ARGV[5]:获取失败时是否入队
+     */
+    public static final String FAIR_ACQUIRE_LOCK_SCRIPT = FAIR_REMOVE_STALE_WAITERS +
+            "if (redis.call('EXISTS', KEYS[1]) == 0) and ((redis.call('EXISTS', KEYS[2]) == 0) " +
+            "or (redis.call('LINDEX', KEYS[2], 0) == ARGV[1])) then " +
+            "redis.call('LPOP', KEYS[2]); " +
+            "redis.call('ZREM', KEYS[3], ARGV[1]); " +
+            "local waiters = redis.call('ZRANGE', KEYS[3], 0, -1); " +
+            "for i = 1, #waiters, 1 do " +
+            "redis.call('ZINCRBY', KEYS[3], -tonumber(ARGV[3]), waiters[i]); " +
+            "end; " +
+            "redis.call('HSET', KEYS[1], ARGV[1], 1); " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "return -1; " +
+            "end; " +
+            "if (redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1) then " +
+            "redis.call('HINCRBY', KEYS[1], ARGV[1], 1); " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "return -1; " +
+            "end; " +
+            "local ttl; " +
+            "local timeout = redis.call('ZSCORE', KEYS[3], ARGV[1]); " +
+            "if timeout ~= false then " +
+            "ttl = tonumber(timeout) - tonumber(ARGV[3]) - tonumber(ARGV[4]); " +
+            "else " +
+            "local tail = redis.call('LINDEX', KEYS[2], -1); " +
+            "if tail ~= false then " +
+            "ttl = tonumber(redis.call('ZSCORE', KEYS[3], tail)) - tonumber(ARGV[4]); " +
+            "else " +
+            "ttl = redis.call('PTTL', KEYS[1]); " +
+            "end; " +
+            "if ARGV[5] == '1' then " +
+            "redis.call('ZADD', KEYS[3], ttl + tonumber(ARGV[3]) + tonumber(ARGV[4]), ARGV[1]); " +
+            "redis.call('RPUSH', KEYS[2], ARGV[1]); " +
+            "end; " +
+            "end; " +
+            "if ttl < 100 then ttl = 100; end; " +
+            "return ttl;";
+    /**
+     * 公平锁解锁脚本,完全解锁后仅通知队首等待者,完全解锁成功返回1,一次解锁成功返回2,解锁失败返回0
+     * ARGV[1]:visitorId,ARGV[2]:过期时间,ARGV[4]:当前时间
+     */
+    public static final String FAIR_UNLOCK_SCRIPT = FAIR_REMOVE_STALE_WAITERS +
+            "if (redis.call('EXISTS', KEYS[1]) == 0) then " +
+            FAIR_NOTIFY_HEAD +
+            "return 0; " +
+            "end; " +
+            "if (redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0) then " +
+            "return 0; " +
+            "end; " +
+            "if (redis.call('HINCRBY', KEYS[1], ARGV[1], -1) > 0) then " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "return 2; " +
+            "end; " +
+            "redis.call('DEL', KEYS[1]); " +
+            FAIR_NOTIFY_HEAD +
+            "return 1;";
+    /**
+     * 公平锁暴力解锁脚本,解锁成功返回1,反之返回0
+     * ARGV[4]:当前时间
+     */
+    public static final String FAIR_FORCE_UNLOCK_SCRIPT = FAIR_REMOVE_STALE_WAITERS +
+            "if (redis.call('DEL', KEYS[1]) == 1) then " +
+            FAIR_NOTIFY_HEAD +
+            "return 1; " +
+            "end; " +
+            "return 0;";
+    /**
+     * 等待者放弃等待时将其移出等待队列,并缩短其后等待者的超时时间;如果移出的是队首且锁空闲,通知新的队首
+     * ARGV[1]:visitorId,ARGV[3]:等待者超时时间
+     */
+    public static final String FAIR_CANCEL_ACQUIRE_SCRIPT = "local queue = redis.call('LRANGE', KEYS[2], 0, -1); " +
+            "local i = 1; " +
+            "while i <= #queue and queue[i] ~= ARGV[1] do i = i + 1; end; " +
+            "if i > #queue then return 0; end; " +
+            "local head = i == 1; " +
+            "for j = i + 1, #queue, 1 do " +
+            "redis.call('ZINCRBY', KEYS[3], -tonumber(ARGV[3]), queue[j]); " +
+            "end; " +
+            "redis.call('ZREM', KEYS[3], ARGV[1]); " +
+            "redis.call('LREM', KEYS[2], 0, ARGV[1]); " +
+            "if head and redis.call('EXISTS', KEYS[1]) == 0 then " +
+            FAIR_NOTIFY_HEAD +
+            "end; " +
+            "return 1;";
+    /**
+     * 读写锁清理过期持有者片段,KEYS[2]中记录了每个持有者(读为visitorId,写为visitorId:write)的过期时间
+     * ARGV[3]:当前时间
+     */
+    private static final String RW_REMOVE_EXPIRED_HOLDERS = "local expired = redis.call('ZRANGEBYSCORE', KEYS[2], " +
+            "'-inf', ARGV[3]); " +
+            "if #expired > 0 then " +
+            "for i = 1, #expired, 1 do " +
+            "redis.call('HDEL', KEYS[1], expired[i]); " +
+            "end; " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', ARGV[3]); " +
+            "if redis.call('HLEN', KEYS[1]) <= 1 then " +
+            "redis.call('DEL', KEYS[1]); " +
+            "end; " +
+            "end; ";
+    /**
+     * 读写锁续期片段,更新持有者field的过期时间,锁的ttl取所有持有者中的最大值
+     * ARGV[2]:过期时间,ARGV[3]:当前时间
+     */
+    private static final String RW_EXTEND_HOLDER = "redis.call('ZADD', KEYS[2], tonumber(ARGV[3]) + " +
+            "tonumber(ARGV[2]), field); " +
+            "if redis.call('PTTL', KEYS[1]) < tonumber(ARGV[2]) then " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]); " +
+            "end; " +
+            "if redis.call('PTTL', KEYS[2]) < tonumber(ARGV[2]) then " +
+            "redis.call('PEXPIRE', KEYS[2], ARGV[2]); " +
+            "end; ";
+    /**
+     * 获取读锁脚本,没有写锁或写锁由当前访问者持有(锁降级)时成功,成功返回-1,反之为pttl
+     * KEYS[1]:锁,KEYS[2]:持有者过期时间
+     * ARGV[1]:visitorId,ARGV[2]:过期时间,ARGV[3]:当前时间
+     */
+    public static final String RW_READ_LOCK_SCRIPT = RW_REMOVE_EXPIRED_HOLDERS +
+            "local mode = redis.call('HGET', KEYS[1], 'mode'); " +
+            "if mode == false then " +
+            "redis.call('HSET', KEYS[1], 'mode', 'read'); " +
+            "mode = 'read'; " +
+            "end; " +
+            "if (mode == 'read') or (redis.call('HEXISTS', KEYS[1], ARGV[1] .. ':write') == 1) then " +
+            "redis.call('HINCRBY', KEYS[1], ARGV[1], 1); " +
+            "local field = ARGV[1]; " +
+            RW_EXTEND_HOLDER +
+            "return -1; " +
+            "end; " +
+            "return redis.call('PTTL', KEYS[1]);";
+    /**
+     * 获取写锁脚本,锁空闲或写锁由当前访问者持有(重入)时成功,成功返回-1,反之为pttl
+     * ARGV[1]:visitorId,ARGV[2]:过期时间,ARGV[3]:当前时间
+     */
+    public static final String RW_WRITE_LOCK_SCRIPT = RW_REMOVE_EXPIRED_HOLDERS +
+            "local field = ARGV[1] .. ':write'; " +
+            "local mode = redis.call('HGET', KEYS[1], 'mode'); " +
+            "if (mode == false) or (mode == 'write' and redis.call('HEXISTS', KEYS[1], field) == 1) then " +
+            "redis.call('HSET', KEYS[1], 'mode', 'write'); " +
+            "redis.call('HINCRBY', KEYS[1], field, 1); " +
+            RW_EXTEND_HOLDER +
+            "return -1; " +
+            "end; " +
+            "return redis.call('PTTL', KEYS[1]);";
+    /**
+     * 读锁解锁脚本,没有任何持有者时删除锁并通知等待者,完全解锁成功返回1,一次解锁成功返回2,解锁失败返回0
+     * ARGV[1]:visitorId
+     */
+    public static final String RW_READ_UNLOCK_SCRIPT = "if (redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0) then " +
+            "return 0; " +
+            "end; " +
+            "if (redis.call('HINCRBY', KEYS[1], ARGV[1], -1) > 0) then " +
+            "return 2; " +
+            "end; " +
+            "redis.call('HDEL', KEYS[1], ARGV[1]); " +
+            "redis.call('ZREM', KEYS[2], ARGV[1]); " +
+            "if redis.call('HLEN', KEYS[1]) <= 1 then " +
+            "redis.call('DEL', KEYS[1], KEYS[2]); " +
+            "redis.call('PUBLISH', KEYS[1], 1); " +
+            "end; " +
+            "return 1;";
+    /**
+     * 写锁解锁脚本,当前访问者仍持有读锁时降级为读模式并通知等待中的读者,完全解锁成功返回1,一次解锁成功返回2,解锁失败返回0
+     * ARGV[1]:visitorId
+     */
+    public static final String RW_WRITE_UNLOCK_SCRIPT = "local field = ARGV[1] .. ':write'; " +
+            "if (redis.call('HEXISTS', KEYS[1], field) == 0) then " +
+            "return 0; " +
+            "end; " +
+            "if (redis.call('HINCRBY', KEYS[1], field, -1) > 0) then " +
+            "return 2; " +
+            "end; " +
+            "redis.call('HDEL', KEYS[1], field); " +
+            "redis.call('ZREM', KEYS[2], field); " +
+            "if redis.call('HLEN', KEYS[1]) <= 1 then " +
+            "redis.call('DEL', KEYS[1], KEYS[2]); " +
+            "else " +
+            "redis.call('HSET', KEYS[1], 'mode', 'read'); " +
+            "end; " +
+            "redis.call('PUBLISH', KEYS[1], 1); " +
+            "return 1;";
+    /**
+     * 读写锁续期脚本,由watchdog定时回调
+     * ARGV[1]:持有者field,ARGV[2]:过期时间,ARGV[3]:当前时间
+     */
+    public static final String RW_UPDATE_TTL_SCRIPT = "if (redis.call('HEXISTS', KEYS[1], ARGV[1]) == 1) then " +
+            "local field = ARGV[1]; " +
+            RW_EXTEND_HOLDER +
+            "return 1; " +
+            "end; " +
+            "return 0;";
+    /**
+     * 读写锁暴力解锁脚本,解锁成功返回1,反之返回0
+     */
+    public static final String RW_FORCE_UNLOCK_SCRIPT = "if (redis.call('DEL', KEYS[1]) == 1) then " +
+            "redis.call('DEL', KEYS[2]); " +
+            "redis.call('PUBLISH', KEYS[1], 1); " +
+            "return 1; " +
+            "end; " +
+            "return 0;";
+
+    /**
+     * 信号量清理过期租约片段,租约标识以":"+许可数量结尾,过期后归还其占用的许可
+     * KEYS[1]:信号量,KEYS[2]:租约过期时间,ARGV[4]:当前时间
+     */
+    private static final String SEMAPHORE_REMOVE_EXPIRED_LEASES = "local expired = redis.call('ZRANGEBYSCORE', " +
+            "KEYS[2], '-inf', ARGV[4]); " +
+            "if #expired > 0 then " +
+            "local permits = 0; " +
+            "for i = 1, #expired, 1 do " +
+            "permits = permits + tonumber(string.match(expired[i], ':(%d+)$')); " +
+            "end; " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', ARGV[4]); " +
+            "redis.call('HINCRBY', KEYS[1], 'used', -permits); " +
+            "redis.call('PUBLISH', KEYS[1], permits); " +
+            "end; ";
+    /**
+     * 获取信号量许可脚本,成功返回-1,反之返回最近一个租约的剩余时间
+     * ARGV[1]:租约标识,ARGV[2]:许可数量,ARGV[3]:过期时间,ARGV[4]:当前时间
+     */
+    public static final String SEMAPHORE_ACQUIRE_SCRIPT = SEMAPHORE_REMOVE_EXPIRED_LEASES +
+            "local permits = tonumber(redis.call('HGET', KEYS[1], 'permits')) or 0; " +
+            "local used = tonumber(redis.call('HGET', KEYS[1], 'used')) or 0; " +
+            "if permits - used >= tonumber(ARGV[2]) then " +
+            "redis.call('HINCRBY', KEYS[1], 'used', ARGV[2]); " +
+            "redis.call('ZADD', KEYS[2], tonumber(ARGV[4]) + tonumber(ARGV[3]), ARGV[1]); " +
+            "return -1; " +
+            "end; " +
+            "local head = redis.call('ZRANGE', KEYS[2], 0, 0, 'WITHSCORES'); " +
+            "if #head == 0 then " +
+            "return tonumber(ARGV[3]); " +
+            "end; " +
+            "local ttl = tonumber(head[2]) - tonumber(ARGV[4]); " +
+            "if ttl < 100 then ttl = 100; end; " +
+            "return ttl;";
+    /**
+     * 归还信号量许可脚本,成功返回1,租约不存在(已过期或已归还)返回0
+     * ARGV[1]:租约标识
+     */
+    public static final String SEMAPHORE_RELEASE_SCRIPT = "if redis.call('ZREM', KEYS[2], ARGV[1]) == 0 then " +
+            "return 0; " +
+            "end; " +
+            "local permits = tonumber(string.match(ARGV[1], ':(%d+)$')); " +
+            "redis.call('HINCRBY', KEYS[1], 'used', -permits); " +
+            "redis.call('PUBLISH', KEYS[1], permits); " +
+            "return 1;";
+    /**
+     * 信号量租约续期脚本,由watchdog定时回调,成功返回1,租约不存在返回0
+     * ARGV[1]:租约标识,ARGV[3]:过期时间,ARGV[4]:当前时间
+     */
+    public static final String SEMAPHORE_RENEW_SCRIPT = "if redis.call('ZSCORE', KEYS[2], ARGV[1]) == false then " +
+            "return 0; " +
+            "end; " +
+            "redis.call('ZADD', KEYS[2], tonumber(ARGV[4]) + tonumber(ARGV[3]), ARGV[1]); " +
+            "return 1;";
+    /**
+     * 设置或增减信号量许可总数脚本,ARGV[2]为1时仅在未设置过时生效,成功返回1,反之返回0
+     * ARGV[1]:许可数量,ARGV[2]:是否仅在未设置时生效
+     */
+    public static final String SEMAPHORE_SET_PERMITS_SCRIPT = "if ARGV[2] == '1' then " +
+            "if redis.call('HSETNX', KEYS[1], 'permits', ARGV[1]) == 0 then " +
+            "return 0; " +
+            "end; " +
+            "else " +
+            "redis.call('HINCRBY', KEYS[1], 'permits', ARGV[1]); " +
+            "end; " +
+            "if tonumber(ARGV[1]) > 0 then " +
+            "redis.call('PUBLISH', KEYS[1], ARGV[1]); " +
+            "end; " +
+            "return 1;";
+    /**
+     * 返回信号量当前可用的许可数量,同时清理过期租约
+     * ARGV[4]:当前时间
+     */
+    public static final String SEMAPHORE_AVAILABLE_SCRIPT = SEMAPHORE_REMOVE_EXPIRED_LEASES +
+            "local permits = tonumber(redis.call('HGET', KEYS[1], 'permits')) or 0; " +
+            "local used = tonumber(redis.call('HGET', KEYS[1], 'used')) or 0; " +
+            "return permits - used;";
+
+    /**
+     * 设置闭锁计数脚本,仅在计数不存在(未设置或已归零)时生效,成功返回1,反之返回0
+     * KEYS[1]:闭锁,ARGV[1]:计数
+     */
+    public static final String LATCH_TRY_SET_COUNT_SCRIPT = "if redis.call('EXISTS', KEYS[1]) == 1 then " +
+            "return 0; " +
+            "end; " +
+            "if tonumber(ARGV[1]) > 0 then " +
+            "redis.call('SET', KEYS[1], ARGV[1]); " +
+            "end; " +
+            "return 1;";
+    /**
+     * 闭锁计数减1脚本,归零时删除计数并发布消息,返回剩余计数
+     * KEYS[1]:闭锁
+     */
+    public static final String LATCH_COUNT_DOWN_SCRIPT = "if redis.call('EXISTS', KEYS[1]) == 0 then " +
+            "return 0; " +
+            "end; " +
+            "local count = redis.call('DECR', KEYS[1]); " +
+            "if count <= 0 then " +
+            "redis.call('DEL', KEYS[1]); " +
+            "redis.call('PUBLISH', KEYS[1], 0); " +
+            "return 0; " +
+            "end; " +
+            "return count;";
+    /**
+     * 返回闭锁当前计数
+     * KEYS[1]:闭锁
+     */
+    public static final String LATCH_GET_COUNT_SCRIPT = "return tonumber(redis.call('GET', KEYS[1])) or 0;";
+    /**
+     * 设置栅栏参与者数量脚本,仅在未设置过时生效,成功返回1,反之返回0
+     * KEYS[1]:栅栏,ARGV[1]:参与者数量
+     */
+    public static final String BARRIER_TRY_SET_PARTIES_SCRIPT = "return redis.call('HSETNX', KEYS[1], " +
+            "'parties', ARGV[1]);";
+    /**
+     * 到达栅栏脚本,最后一个到达者重置计数、推进代数并发布消息;返回{到达序号,到达时的代数},
+     * 到达序号为0表示最后一个到达者,参与者数量未设置时返回{-1,0}
+     * KEYS[1]:栅栏
+     */
+    public static final String BARRIER_ARRIVE_SCRIPT = "local parties = tonumber(redis.call('HGET', KEYS[1], " +
+            "'parties')); " +
+            "if parties == nil then " +
+            "return {-1, 0}; " +
+            "end; " +
+            "local generation = tonumber(redis.call('HGET', KEYS[1], 'generation')) or 0; " +
+            "local count = redis.call('HINCRBY', KEYS[1], 'count', 1); " +
+            "if count >= parties then " +
+            "redis.call('HSET', KEYS[1], 'count', 0); " +
+            "redis.call('HINCRBY', KEYS[1], 'generation', 1); " +
+            "redis.call('PUBLISH', KEYS[1], generation + 1); " +
+            "return {0, generation}; " +
+            "end; " +
+            "return {parties - count, generation};";
+    /**
+     * 等待超时后撤销到达脚本,代数未变化时撤销并返回1,栅栏已放行返回0
+     * KEYS[1]:栅栏,ARGV[1]:到达时的代数
+     */
+    public static final String BARRIER_CANCEL_SCRIPT = "local generation = tonumber(redis.call('HGET', KEYS[1], " +
+            "'generation')) or 0; " +
+            "if generation ~= tonumber(ARGV[1]) then " +
+            "return 0; " +
+            "end; " +
+            "redis.call('HINCRBY', KEYS[1], 'count', -1); " +
+            "return 1;";
+    /**
+     * 返回栅栏状态{参与者数量,已到达数量,代数}
+     * KEYS[1]:栅栏
+     */
+    public static final String BARRIER_STATE_SCRIPT = "return {tonumber(redis.call('HGET', KEYS[1], 'parties')) " +
+            "or 0, tonumber(redis.call('HGET', KEYS[1], 'count')) or 0, tonumber(redis.call('HGET', KEYS[1], " +
+            "'generation')) or 0};";
+
+    /**
+     * 缺省TTL为30000毫秒
+     */
+    public static final int DEFAULT_KEY_TTL = 0x7530;
+
+    /**
+     * watchdog的缺省更新时间为10,单位秒
+     *
+     * @deprecated 续期间隔改为由过期时间推导(1/3),请使用{@link LockOptions.Builder#watchDogTimeout}
+     */
+    @Deprecated
+    public static int DEFAULT_UPDATE_TIME = 0xa;
+
+    /**
+     * 公平锁等待者的缺省超时时间为5000,单位毫秒
+     */
+    public static final int DEFAULT_FAIR_WAIT_TIME = 0x1388;
+}
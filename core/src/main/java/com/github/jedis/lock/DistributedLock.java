@@ -30,21 +30,28 @@ import java.util.concurrent.TimeUnit;
 @Documented
 public @interface DistributedLock {
     /**
-     * 分布式锁资源名称
+     * 分布式锁资源名称,包含#{...}时按SpEL模板求值,可引用方法入参,例如"order:#{#orderId}"
      *
      * @return
      */
     String name();
 
     /**
-     * 尝试获取锁资源的最大时间,time和unit参数仅针对trylock方式
+     * 尝试获取锁资源的最大时间,仅针对trylock方式
      *
      * @return
      */
     long time() default 0L;
 
     /**
-     * 时间单位
+     * 固定租期,锁在租期结束后自动失效,不再由watchdog续期;小于1时使用缺省过期时间并由watchdog续期
+     *
+     * @return
+     */
+    long leaseTime() default -1L;
+
+    /**
+     * time和leaseTime的时间单位
      *
      * @return
      */
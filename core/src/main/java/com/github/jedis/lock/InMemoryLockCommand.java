@@ -0,0 +1,382 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.JedisLockException;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+
+/**
+ * 进程内的LockCommand,在本地用Java等价实现可重入锁相关的Lua脚本,无需redis及网络往返
+ * <p>
+ * 每个key的脚本通过ConcurrentHashMap#compute原子执行,语义与redis中的脚本保持一致,包括PEXPIRE/PTTL过期
+ * 以及解锁时的PUBLISH;过期key在访问时惰性删除,同时由后台定时器周期性清理。订阅消息由定时器线程异步投递,
+ * 与redis一样不会在执行脚本的线程中回调。
+ * <p>
+ * 仅支持JedisLockManager#getLock获取的可重入锁(多个实例组成红锁同样可用),公平锁、读写锁、信号量等
+ * 其他脚本执行时抛出JedisLockException;锁状态仅在当前进程内可见,适用于单节点服务、测试及基准对比
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/9 10:20 上午
+ */
+public class InMemoryLockCommand implements AsyncLockCommand {
+    /**
+     * 过期key的清理周期,单位毫秒,与redis缺省的hz(10)一致
+     */
+    private static final long SWEEP_INTERVAL = 100;
+    /**
+     * 解锁时发布的消息内容
+     */
+    private static final String UNLOCK_MESSAGE = "1";
+    private static final Map<String, Script> SCRIPTS = new HashMap<>(8);
+    private Map<String, Entry> keys = new ConcurrentHashMap<>(32);
+    /**
+     * 通道及其订阅次数,同一实例可由多个JedisLockManager共享以模拟多个JVM之间的竞争
+     */
+    private Map<String, Integer> channels = new ConcurrentHashMap<>(32);
+    private List<BiConsumer<String, String>> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService timer;
+    private volatile LockMetrics metrics = LockMetrics.NOOP;
+
+    static {
+        SCRIPTS.put(ScriptRegistry.sha1(Constants.ACQUIRE_LOCK_SCRIPT), InMemoryLockCommand::acquire);
+        SCRIPTS.put(ScriptRegistry.sha1(Constants.ACQUIRE_UNLOCK_SCRIPT), InMemoryLockCommand::release);
+        SCRIPTS.put(ScriptRegistry.sha1(Constants.HANDOFF_UNLOCK_SCRIPT), InMemoryLockCommand::handoff);
+        SCRIPTS.put(ScriptRegistry.sha1(Constants.ACQUIRE_FORCE_UNLOCK_SCRIPT), InMemoryLockCommand::forceRelease);
+        SCRIPTS.put(ScriptRegistry.sha1(Constants.UPDATE_LOCK_TTL_SCRIPT), InMemoryLockCommand::renew);
+    }
+
+    public InMemoryLockCommand() {
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jedis-lock-in-memory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Object eval(String script, int keyCount, String... params) {
+        return execute(ScriptRegistry.sha1(script), true, SafeEncoder.encodeMany(params));
+    }
+
+    /**
+     * 不需要真正加载,直接返回本地计算的sha1
+     *
+     * @param script
+     * @return
+     */
+    @Override
+    public String scriptLoad(String script) {
+        return ScriptRegistry.sha1(script);
+    }
+
+    @Override
+    public Object evalsha(String script, int keyCount, String... params) {
+        return execute(script, false, SafeEncoder.encodeMany(params));
+    }
+
+    @Override
+    public Object eval(byte[] script, int keyCount, byte[]... params) {
+        return execute(ScriptRegistry.sha1(SafeEncoder.encode(script)), true, params);
+    }
+
+    @Override
+    public Object evalsha(byte[] sha, int keyCount, byte[]... params) {
+        return execute(SafeEncoder.encode(sha), false, params);
+    }
+
+    @Override
+    public CompletableFuture<Object> evalAsync(byte[] script, int keyCount, byte[]... params) {
+        return complete(() -> eval(script, keyCount, params));
+    }
+
+    @Override
+    public CompletableFuture<Object> evalshaAsync(byte[] sha, int keyCount, byte[]... params) {
+        return complete(() -> evalsha(sha, keyCount, params));
+    }
+
+    /**
+     * 订阅由listen/subscribeAsync完成,不支持阻塞式订阅
+     */
+    @Override
+    public void subscribe(Runnable callBack, JedisPubSub jedisPubSub, String... channels) {
+        throw new JedisLockException("Features not supported");
+    }
+
+    /**
+     * 每个SubscribeHub回调一次,消息投递给所有listener,由SubscribeHub按通道过滤;
+     * 本地投递不存在断线,disconnect/reconnect不会被回调
+     */
+    @Override
+    public void listen(BiConsumer<String, String> listener, Runnable disconnect, Runnable reconnect) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    @Override
+    public CompletableFuture<Void> subscribeAsync(String channel) {
+        channels.merge(channel, 1, Integer::sum);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> unsubscribeAsync(String channel) {
+        channels.computeIfPresent(channel, (k, count) -> count > 1 ? count - 1 : null);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void setMetrics(LockMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * 返回当前未过期的key数量
+     *
+     * @return
+     */
+    public int size() {
+        long now = now();
+        return (int) keys.values().stream().filter(entry -> !entry.isExpired(now)).count();
+    }
+
+    /**
+     * 停止定时器并清空所有key
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        keys.clear();
+        channels.clear();
+        listeners.clear();
+    }
+
+    /**
+     * 在目标key上原子执行脚本,params[0]为KEYS[1],其余为ARGV
+     *
+     * @param sha
+     * @param eval  是否为eval调用,脚本未实现时eval抛出JedisLockException,evalsha与redis一致抛出NOSCRIPT
+     * @param params
+     * @return
+     */
+    private Object execute(String sha, boolean eval, byte[]... params) {
+        Script script = SCRIPTS.get(sha);
+        if (Objects.isNull(script)) {
+            if (eval) {
+                throw new JedisLockException("Features not supported");
+            }
+            throw new JedisNoScriptException("NOSCRIPT No matching script. Please use EVAL.");
+        }
+        String key = SafeEncoder.encode(params[0]);
+        String[] argv = new String[params.length - 1];
+        for (int i = 0; i < argv.length; i++) {
+            argv[i] = SafeEncoder.encode(params[i + 1]);
+        }
+        Reply reply = new Reply();
+        keys.compute(key, (k, entry) -> {
+            long now = now();
+            return script.execute(Objects.nonNull(entry) && entry.isExpired(now) ? null : entry, argv, now, reply);
+        });
+        if (reply.publish) {
+            publish(key, UNLOCK_MESSAGE);
+        }
+        return reply.value;
+    }
+
+    /**
+     * 与redis一致,仅投递给发布时已订阅的通道,由定时器线程异步回调
+     *
+     * @param channel
+     * @param message
+     */
+    private void publish(String channel, String message) {
+        if (!channels.containsKey(channel)) {
+            return;
+        }
+        try {
+            timer.execute(() -> listeners.forEach(listener -> {
+                try {
+                    listener.accept(channel, message);
+                } catch (RuntimeException e) {
+                    metrics.onError(null, e);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            //...已关闭
+        }
+    }
+
+    /**
+     * 清理已过期的key
+     */
+    private void sweep() {
+        long now = now();
+        keys.forEach((key, entry) -> {
+            if (entry.isExpired(now)) {
+                keys.computeIfPresent(key, (k, current) -> current.isExpired(now) ? null : current);
+            }
+        });
+    }
+
+    private static CompletableFuture<Object> complete(Callable<Object> task) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        try {
+            result.complete(task.call());
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * 对应ACQUIRE_LOCK_SCRIPT,如果成功获取到锁资源返回-1,反之为pttl
+     */
+    private static Entry acquire(Entry entry, String[] argv, long now, Reply reply) {
+        if (Objects.isNull(entry)) {
+            entry = new Entry();
+            entry.fields.put(argv[0], 1L);
+            reply.value = -1L;
+            return entry.pexpire(argv[1], now);
+        }
+        if (entry.fields.containsKey(argv[0])) {
+            entry.fields.merge(argv[0], 1L, Long::sum);
+            reply.value = -1L;
+            return entry.pexpire(argv[1], now);
+        }
+        reply.value = entry.pttl(now);
+        return entry;
+    }
+
+    /**
+     * 对应ACQUIRE_UNLOCK_SCRIPT,完全解锁成功返回1并发布解锁消息,一次解锁成功返回2,解锁失败返回0
+     */
+    private static Entry release(Entry entry, String[] argv, long now, Reply reply) {
+        if (Objects.isNull(entry) || !entry.fields.containsKey(argv[0])) {
+            reply.value = 0L;
+            return entry;
+        }
+        long count = entry.fields.merge(argv[0], -1L, Long::sum);
+        entry = entry.pexpire(argv[1], now);
+        if (count < 1) {
+            reply.value = 1L;
+            reply.publish = true;
+            return null;
+        }
+        reply.value = 2L;
+        return entry;
+    }
+
+    /**
+     * 对应HANDOFF_UNLOCK_SCRIPT,完全解锁时将锁移交给ARGV[3]对应的访问者,移交成功返回3,一次解锁成功返回2,解锁失败返回0
+     */
+    private static Entry handoff(Entry entry, String[] argv, long now, Reply reply) {
+        if (Objects.isNull(entry) || !entry.fields.containsKey(argv[0])) {
+            reply.value = 0L;
+            return entry;
+        }
+        if (entry.fields.merge(argv[0], -1L, Long::sum) < 1) {
+            entry.fields.remove(argv[0]);
+            entry.fields.put(argv[2], 1L);
+            reply.value = 3L;
+            return entry.pexpire(argv[1], now);
+        }
+        reply.value = 2L;
+        return entry.pexpire(argv[1], now);
+    }
+
+    /**
+     * 对应ACQUIRE_FORCE_UNLOCK_SCRIPT,解锁成功返回1并发布解锁消息,反之返回0
+     */
+    private static Entry forceRelease(Entry entry, String[] argv, long now, Reply reply) {
+        reply.value = Objects.isNull(entry) ? 0L : 1L;
+        reply.publish = Objects.nonNull(entry);
+        return null;
+    }
+
+    /**
+     * 对应UPDATE_LOCK_TTL_SCRIPT,脚本无返回值
+     */
+    private static Entry renew(Entry entry, String[] argv, long now, Reply reply) {
+        if (Objects.nonNull(entry) && entry.fields.containsKey(argv[0])) {
+            return entry.pexpire(argv[1], now);
+        }
+        return entry;
+    }
+
+    /**
+     * 脚本的Java实现,入参为未过期的key(不存在时为null),返回执行后的key,为null时删除
+     */
+    @FunctionalInterface
+    private interface Script {
+        Entry execute(Entry entry, String[] argv, long now, Reply reply);
+    }
+
+    /**
+     * 脚本返回值,value为null对应redis的nil
+     */
+    private static class Reply {
+        private Object value;
+        private boolean publish;
+    }
+
+    /**
+     * 一个hash类型的key,仅在ConcurrentHashMap#compute中修改
+     */
+    private static class Entry {
+        private Map<String, Long> fields = new HashMap<>(4);
+        /**
+         * 过期时间点,单位毫秒,-1表示永不过期
+         */
+        private volatile long expireAt = -1;
+
+        /**
+         * 与redis的PEXPIRE一致,过期时间不大于0时直接删除key
+         *
+         * @param ttl
+         * @param now
+         * @return
+         */
+        private Entry pexpire(String ttl, long now) {
+            long value = Long.parseLong(ttl);
+            if (value <= 0) {
+                return null;
+            }
+            expireAt = now + value;
+            return this;
+        }
+
+        private long pttl(long now) {
+            return expireAt < 0 ? -1 : expireAt - now;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt >= 0 && expireAt <= now;
+        }
+    }
+}
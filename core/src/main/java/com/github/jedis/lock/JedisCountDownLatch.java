@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import redis.clients.util.SafeEncoder;
+
+import java.util.Objects;
+import java.util.concurrent.*;
+
+/**
+ * 分布式闭锁
+ * <p>
+ * 计数归零时删除计数并通过订阅通道发布一条消息,等待者仅在收到消息(或订阅生效、重连)时重新检查计数,
+ * 等待期间不轮询redis;异步等待同样由消息驱动,不占用线程。计数归零后可以再次通过trySetCount设置新的计数
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/2 9:40 上午
+ */
+public class JedisCountDownLatch {
+    private String name;
+    private byte[] nameBytes;
+    private LockCommand client;
+    private SubscribeHub hub;
+    private ScriptRegistry scripts;
+    private LockWatchDog watchDog;
+    /**
+     * 计数归零时仅发布一次消息,唤醒全部等待者
+     */
+    private SubscribeListener listener = new SubscribeListener(Integer.MAX_VALUE, null) {
+        @Override
+        protected void onSubscribed() {
+            wake(Integer.MAX_VALUE);
+        }
+    };
+
+    protected JedisCountDownLatch(String name, LockCommand client, SubscribeHub hub, ScriptRegistry scripts,
+                                  LockWatchDog watchDog) {
+        this.name = String.format("jedis_latch:{%s}", name);
+        this.nameBytes = SafeEncoder.encode(this.name);
+        this.client = client;
+        this.hub = hub;
+        this.scripts = scripts;
+        this.watchDog = watchDog;
+    }
+
+    /**
+     * 仅在计数不存在(未设置或已归零)时设置计数
+     *
+     * @param count
+     * @return
+     */
+    public boolean trySetCount(long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Parameter count must be >= 0");
+        }
+        return Long.valueOf(1L).equals(scripts.eval(client, Constants.LATCH_TRY_SET_COUNT_SCRIPT, 1, nameBytes,
+                SafeEncoder.encode(String.valueOf(count))));
+    }
+
+    /**
+     * 计数减1,归零时唤醒所有等待者
+     */
+    public void countDown() {
+        scripts.eval(client, Constants.LATCH_COUNT_DOWN_SCRIPT, 1, nameBytes);
+    }
+
+    public CompletableFuture<Void> countDownAsync() {
+        return CompletableFuture.runAsync(this::countDown, watchDog.getWorkerGroup());
+    }
+
+    /**
+     * 返回当前计数
+     *
+     * @return
+     */
+    public long getCount() {
+        Long result = (Long) scripts.eval(client, Constants.LATCH_GET_COUNT_SCRIPT, 1, nameBytes);
+        return Objects.isNull(result) ? 0L : result;
+    }
+
+    /**
+     * 等待直至计数归零
+     */
+    public void await() {
+        await(-1L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 异步等待直至计数归零,回调在watchdog的异步线程组中执行
+     *
+     * @return
+     */
+    public CompletableFuture<Void> awaitAsync() {
+        CompletableFuture<Boolean> future = awaitAsync(-1L, TimeUnit.MILLISECONDS);
+        CompletableFuture<Void> result = future.thenApply(v -> null);
+        result.whenComplete((v, e) -> {
+            if (result.isCancelled()) {
+                future.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 在指定单位时间内等待计数归零
+     *
+     * @param time 小于0时表示一直等待
+     * @param unit
+     * @return 计数归零返回true,超时返回false
+     */
+    public boolean await(long time, TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        if (getCount() == 0) {
+            return true;
+        }
+        if (time == 0) {
+            return false;
+        }
+        boolean timed = time > 0, interrupted = false;
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        SubscribeListener.Waiter waiter = listener.subscribe();
+        hub.subscribe(name, listener);
+        try {
+            while (getCount() != 0) {
+                if (timed) {
+                    long remain = deadline - System.nanoTime();
+                    if (remain <= 0L) {
+                        return false;
+                    }
+                    waiter.park(this, remain);
+                } else {
+                    waiter.park(this, -1L);
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                }
+            }
+            return true;
+        } finally {
+            listener.unsubscribe(waiter);
+            hub.unsubscribe(name);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 在指定单位时间内异步等待计数归零,取消后放弃等待
+     *
+     * @param time 小于0时表示一直等待
+     * @param unit
+     * @return 计数归零时为true,超时为false
+     */
+    public CompletableFuture<Boolean> awaitAsync(long time, TimeUnit unit) {
+        return new AsyncAwait<Boolean>(name, listener, hub, watchDog, time, unit) {
+            @Override
+            protected void check(boolean expired) {
+                if (getCount() == 0) {
+                    future.complete(true);
+                } else if (expired) {
+                    future.complete(false);
+                }
+            }
+        }.start();
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.JedisLockException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 分布式循环栅栏
+ * <p>
+ * redis中使用hash记录参与者数量(parties)、已到达数量(count)及代数(generation),最后一个到达者重置计数、
+ * 推进代数并通过订阅通道发布一条消息,等待者仅在收到消息(或订阅生效、重连)时检查代数是否变化,等待期间不轮询redis。
+ * 异步等待同样由消息驱动,不占用线程。等待超时或取消异步等待的参与者会撤销本次到达,不会破坏栅栏;
+ * 已到达的参与者宕机后其到达计数不会自动撤销
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/2 2:15 下午
+ */
+public class JedisCyclicBarrier {
+    private String name;
+    private byte[] nameBytes;
+    private LockCommand client;
+    private SubscribeHub hub;
+    private ScriptRegistry scripts;
+    private LockWatchDog watchDog;
+    /**
+     * 每一代放行时仅发布一次消息,唤醒全部等待者
+     */
+    private SubscribeListener listener = new SubscribeListener(Integer.MAX_VALUE, null) {
+        @Override
+        protected void onSubscribed() {
+            wake(Integer.MAX_VALUE);
+        }
+    };
+
+    protected JedisCyclicBarrier(String name, LockCommand client, SubscribeHub hub, ScriptRegistry scripts,
+                                 LockWatchDog watchDog) {
+        this.name = String.format("jedis_barrier:{%s}", name);
+        this.nameBytes = SafeEncoder.encode(this.name);
+        this.client = client;
+        this.hub = hub;
+        this.scripts = scripts;
+        this.watchDog = watchDog;
+    }
+
+    /**
+     * 仅在未设置过时设置参与者数量
+     *
+     * @param parties
+     * @return
+     */
+    public boolean trySetParties(int parties) {
+        if (parties <= 0) {
+            throw new IllegalArgumentException("Parameter parties must be > 0");
+        }
+        return Long.valueOf(1L).equals(scripts.eval(client, Constants.BARRIER_TRY_SET_PARTIES_SCRIPT, 1,
+                nameBytes, SafeEncoder.encode(String.valueOf(parties))));
+    }
+
+    /**
+     * 返回参与者数量,未设置时返回0
+     *
+     * @return
+     */
+    public int getParties() {
+        return getState().get(0).intValue();
+    }
+
+    /**
+     * 返回当前代已到达并等待的参与者数量
+     *
+     * @return
+     */
+    public int getNumberWaiting() {
+        return getState().get(1).intValue();
+    }
+
+    /**
+     * 到达栅栏并等待所有参与者到达
+     *
+     * @return 到达序号,parties-1表示第一个到达,0表示最后一个到达
+     */
+    public int await() {
+        return await(-1L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 异步到达栅栏并等待所有参与者到达,回调在watchdog的异步线程组中执行
+     *
+     * @return
+     */
+    public CompletableFuture<Integer> awaitAsync() {
+        return awaitAsync(-1L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 到达栅栏并在指定单位时间内等待所有参与者到达,超时后撤销本次到达
+     *
+     * @param time 小于0时表示一直等待
+     * @param unit
+     * @return 到达序号,超时返回-1
+     */
+    public int await(long time, TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        boolean timed = time >= 0, interrupted = false;
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        //先订阅再到达,避免错过最后一个到达者发布的消息
+        SubscribeListener.Waiter waiter = listener.subscribe();
+        hub.subscribe(name, listener);
+        try {
+            List<Long> result = arrive();
+            int index = result.get(0).intValue();
+            long generation = result.get(1);
+            while (index != 0 && getState().get(2) == generation) {
+                if (timed) {
+                    long remain = deadline - System.nanoTime();
+                    if (remain <= 0L) {
+                        //撤销失败说明栅栏已在此期间放行
+                        return cancel(generation) ? -1 : index;
+                    }
+                    waiter.park(this, remain);
+                } else {
+                    waiter.park(this, -1L);
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                }
+            }
+            return index;
+        } finally {
+            listener.unsubscribe(waiter);
+            hub.unsubscribe(name);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 异步到达栅栏并在指定单位时间内等待所有参与者到达,超时或取消后撤销本次到达
+     *
+     * @param time 小于0时表示一直等待
+     * @param unit
+     * @return 到达序号,超时为-1
+     */
+    public CompletableFuture<Integer> awaitAsync(long time, TimeUnit unit) {
+        return new AsyncAwait<Integer>(name, listener, hub, watchDog, time, unit) {
+            private volatile boolean arrived;
+            private int index;
+            private long generation;
+            /**
+             * 撤销只执行一次,取消与到达并发时可能同时尝试撤销
+             */
+            private final AtomicBoolean revoked = new AtomicBoolean();
+
+            @Override
+            protected void check(boolean expired) {
+                if (!arrived) {
+                    List<Long> result = arrive();
+                    index = result.get(0).intValue();
+                    generation = result.get(1);
+                    arrived = true;
+                    if (index == 0) {
+                        future.complete(0);
+                        return;
+                    }
+                    if (future.isDone()) {
+                        revoke();//到达期间已被取消
+                        return;
+                    }
+                }
+                if (getState().get(2) != generation) {
+                    future.complete(index);
+                } else if (expired && revoked.compareAndSet(false, true)) {
+                    future.complete(cancel(generation) ? -1 : index);//撤销失败说明栅栏已在此期间放行
+                }
+            }
+
+            @Override
+            protected void cancelled() {
+                if (arrived && index != 0) {
+                    execute(this::revoke);
+                }
+            }
+
+            private void revoke() {
+                if (revoked.compareAndSet(false, true)) {
+                    try {
+                        cancel(generation);
+                    } catch (RuntimeException e) {
+                        //...
+                    }
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * 到达栅栏
+     *
+     * @return {到达序号,代数}
+     */
+    @SuppressWarnings("unchecked")
+    private List<Long> arrive() {
+        List<Long> result = (List<Long>) scripts.eval(client, Constants.BARRIER_ARRIVE_SCRIPT, 1, nameBytes);
+        if (result.get(0) < 0) {
+            throw new JedisLockException(String.format("parties is not set by barrier name: %s", name));
+        }
+        return result;
+    }
+
+    private boolean cancel(long generation) {
+        return Long.valueOf(1L).equals(scripts.eval(client, Constants.BARRIER_CANCEL_SCRIPT, 1, nameBytes,
+                SafeEncoder.encode(String.valueOf(generation))));
+    }
+
+    /**
+     * 返回栅栏状态{参与者数量,已到达数量,代数}
+     *
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private List<Long> getState() {
+        return (List<Long>) scripts.eval(client, Constants.BARRIER_STATE_SCRIPT, 1, nameBytes);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import redis.clients.util.SafeEncoder;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 公平可重入锁实现
+ * <p>
+ * 在redis中维护等待队列(list)和等待者超时时间(zset),按FIFO顺序获取锁;解锁时仅通知队首等待者的独立通道,
+ * 不会唤醒其他等待者。Cluster模式下等待队列通过hash tag与锁位于同一slot,因此锁名称中不能包含'{'和'}'
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/27 4:36 下午
+ */
+public class JedisFairLock extends JedisReentrantLock {
+    private byte[] queueKey;
+    private byte[] timeoutKey;
+    private byte[] waitTimeBytes;
+
+    protected JedisFairLock(String name, LockCommand client, SubscribeHub hub, ScriptRegistry scripts,
+                            LockWatchDog watchDog, LockOptions options) {
+        super(name, client, hub, scripts, watchDog, options.toBuilder().localHandoff(false).build());
+        this.queueKey = SafeEncoder.encode(String.format("jedis_lock_queue:{%s}", name));
+        this.timeoutKey = SafeEncoder.encode(String.format("jedis_lock_timeout:{%s}", name));
+        this.waitTimeBytes = SafeEncoder.encode(String.valueOf(Constants.DEFAULT_FAIR_WAIT_TIME));
+    }
+
+    @Override
+    protected Long tryAcquireLock(LockVisitor visitor, long leaseTime, boolean wait) {
+        return (Long) evalScript(Constants.FAIR_ACQUIRE_LOCK_SCRIPT, 3, nameBytes, queueKey, timeoutKey,
+                visitor.getIdBytes(), getArgs(visitor, leaseTime)[2], waitTimeBytes, now(), SafeEncoder.encode(wait ? "1" : "0"));
+    }
+
+    @Override
+    protected CompletableFuture<Long> tryAcquireLockAsync(LockVisitor visitor, long leaseTime, boolean wait) {
+        return evalScriptAsync(Constants.FAIR_ACQUIRE_LOCK_SCRIPT, 3, nameBytes, queueKey, timeoutKey,
+                visitor.getIdBytes(), getArgs(visitor, leaseTime)[2], waitTimeBytes, now(),
+                SafeEncoder.encode(wait ? "1" : "0")).thenApply(Long.class::cast);
+    }
+
+    @Override
+    protected Long releaseLock(LockVisitor visitor) {
+        return (Long) evalScript(Constants.FAIR_UNLOCK_SCRIPT, 3, nameBytes, queueKey, timeoutKey,
+                visitor.getIdBytes(), getArgs(visitor, getLeaseTime(visitor))[2], waitTimeBytes, now());
+    }
+
+    @Override
+    protected Long forceReleaseLock() {
+        return (Long) evalScript(Constants.FAIR_FORCE_UNLOCK_SCRIPT, 3, nameBytes, queueKey, timeoutKey,
+                new byte[0], ttlBytes, waitTimeBytes, now());
+    }
+
+    @Override
+    protected void cancelAcquire(LockVisitor visitor) {
+        evalScript(Constants.FAIR_CANCEL_ACQUIRE_SCRIPT, 3, nameBytes, queueKey, timeoutKey, visitor.getIdBytes(),
+                ttlBytes, waitTimeBytes);
+    }
+
+    /**
+     * 公平锁由redis中的等待队列排队,本地不再排队
+     *
+     * @return
+     */
+    @Override
+    protected boolean isLocalQueued() {
+        return false;
+    }
+
+    /**
+     * 每个等待者订阅自己的通道,解锁时只有队首会被唤醒
+     *
+     * @param visitor
+     * @param signal
+     */
+    @Override
+    protected SubscribeListener.Waiter subscribe(LockVisitor visitor, Runnable signal) {
+        SubscribeListener listener = new SubscribeListener(null);
+        SubscribeListener.Waiter waiter = Objects.isNull(signal) ? listener.subscribe() : listener.subscribe(signal);
+        hub.subscribe(getChannel(visitor), listener);
+        return waiter;
+    }
+
+    @Override
+    protected void unsubscribe(LockVisitor visitor, SubscribeListener.Waiter waiter) {
+        hub.unsubscribe(getChannel(visitor));
+    }
+
+    private String getChannel(LockVisitor visitor) {
+        return String.format("%s:%s", name, visitor.getId());
+    }
+
+    private static byte[] now() {
+        return SafeEncoder.encode(String.valueOf(System.currentTimeMillis()));
+    }
+}
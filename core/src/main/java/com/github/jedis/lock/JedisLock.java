@@ -15,6 +15,8 @@
  */
 package com.github.jedis.lock;
 
+import com.github.jedis.exceptions.JedisLockException;
+
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -72,6 +74,33 @@ public interface JedisLock {
      */
     CompletableFuture<Boolean> tryLockAsync(long time, TimeUnit unit);
 
+    /**
+     * 同步获取重入锁,在指定单位时间内尝试获取锁资源,成功后锁在leaseTime后自动失效,不会由watchdog续期;
+     * 缺省实现不支持固定租期
+     *
+     * @param waitTime
+     * @param leaseTime
+     * @param unit
+     * @return
+     */
+    default boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) {
+        throw new JedisLockException("Features not supported");
+    }
+
+    /**
+     * tryLock的异步方式,缺省实现不支持固定租期
+     *
+     * @param waitTime
+     * @param leaseTime
+     * @param unit
+     * @return
+     */
+    default CompletableFuture<Boolean> tryLockAsync(long waitTime, long leaseTime, TimeUnit unit) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        result.completeExceptionally(new JedisLockException("Features not supported"));
+        return result;
+    }
+
     /**
      * 释放锁资源
      */
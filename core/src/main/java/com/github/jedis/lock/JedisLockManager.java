@@ -0,0 +1,452 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.JedisLockException;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.util.Pool;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * 分布式锁管理类
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/3 6:08 下午
+ */
+public class JedisLockManager {
+    /**
+     * 每个redis数据源对应一个LockCommand,红锁模式下为多个
+     */
+    private List<LockCommand> clients = new ArrayList<>();
+    /**
+     * 由manager自身创建的LockCommand,shutdown时关闭;调用方传入的LockCommand可能被多个manager共享,由调用方关闭
+     */
+    private List<LockCommand> owned = new ArrayList<>();
+    /**
+     * 每个数据源对应一个订阅复用中心,与clients一一对应
+     */
+    private List<SubscribeHub> hubs = new ArrayList<>();
+    private LockType lockType;
+    /**
+     * 锁、公平锁及读写锁的缓存,缺省不限数量;可通过setMaxLocks/setIdleTimeout淘汰空闲的锁
+     */
+    private LockRegistry<JedisLock> lockMap = new LockRegistry<>(LockRegistry::isIdle);
+    private LockRegistry<JedisLock> fairLockMap = new LockRegistry<>(LockRegistry::isIdle);
+    private LockRegistry<JedisReadWriteLock> readWriteLockMap = new LockRegistry<>(JedisReadWriteLock::isIdle);
+    private Map<String, JedisSemaphore> semaphoreMap = new ConcurrentHashMap<>(32);
+    private Map<String, JedisCountDownLatch> latchMap = new ConcurrentHashMap<>(32);
+    private Map<String, JedisCyclicBarrier> barrierMap = new ConcurrentHashMap<>(32);
+    /**
+     * 全局watchdog,所有锁共享
+     */
+    private LockWatchDog watchDog = new LockWatchDog();
+    /**
+     * 全局Lua脚本注册中心,构造时预加载到所有数据源
+     */
+    private ScriptRegistry scripts = new ScriptRegistry();
+    /**
+     * 缺省锁参数,仅对之后创建的锁生效
+     */
+    private volatile LockOptions options = LockOptions.defaults();
+    /**
+     * 全局指标采集器,缺省不采集
+     */
+    private volatile LockMetrics metrics = LockMetrics.NOOP;
+    /**
+     * 空闲淘汰的定时任务,未开启时为null
+     */
+    private LockWatchDog.Lease evictLease;
+    private boolean shutdown;
+
+    /**
+     * 专用于红锁的构造函数
+     *
+     * @param pools
+     */
+    public JedisLockManager(List<Pool> pools) {
+        pools.forEach(pool -> addOwnedClient(new NonClusterLockCommand(pool)));
+        lockType = LockType.RED;
+    }
+
+    /**
+     * 专用于主备的构造函数
+     *
+     * @param pool
+     */
+    public JedisLockManager(Pool pool) {
+        addOwnedClient(new NonClusterLockCommand(pool));
+        lockType = LockType.SINGLE;
+    }
+
+    /**
+     * 专用于集群的构造函数
+     *
+     * @param jedisCluster
+     */
+    public JedisLockManager(JedisCluster jedisCluster) {
+        addOwnedClient(new ClusterLockCommand(jedisCluster));
+        lockType = LockType.CLUSTER;
+    }
+
+    /**
+     * 使用自定义的LockCommand,例如BatchingLockCommand;传入多个时为红锁,每个LockCommand对应一个独立的redis节点。
+     * 传入的LockCommand可以由多个manager共享,shutdown时不会关闭,由调用方在不再使用后调用LockCommand#close
+     *
+     * @param clients
+     */
+    public JedisLockManager(LockCommand... clients) {
+        if (clients.length == 0) {
+            throw new IllegalArgumentException("Parameter clients must not be empty");
+        }
+        Arrays.stream(clients).map(Objects::requireNonNull).forEach(this::addClient);
+        lockType = clients.length > 1 ? LockType.RED : LockType.SINGLE;
+    }
+
+    private void addOwnedClient(LockCommand client) {
+        owned.add(client);
+        addClient(client);
+    }
+
+    private void addClient(LockCommand client) {
+        clients.add(client);
+        hubs.add(new SubscribeHub(client));
+        scripts.preload(client);
+    }
+
+    /**
+     * 锁类型
+     */
+    enum LockType {
+        RED, CLUSTER, SINGLE;
+    }
+
+    /**
+     * 获取分布式锁
+     *
+     * @param name
+     * @return
+     */
+    public JedisLock getLock(String name) {
+        return getLock(name, options);
+    }
+
+    /**
+     * 按指定参数获取分布式锁,同名锁仅在首次创建时应用参数
+     *
+     * @param name
+     * @param options
+     * @return
+     */
+    public JedisLock getLock(String name, LockOptions options) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(options);
+        return lockMap.get(name, key -> newLock(i -> new JedisReentrantLock(key, clients.get(i),
+                hubs.get(i), scripts, watchDog, resolve(options))));
+    }
+
+    /**
+     * 获取基于Project Reactor的分布式锁,与getLock(name)共享同一把锁,需要引入reactor-core依赖
+     *
+     * @param name
+     * @return
+     */
+    public ReactiveJedisLock getReactiveLock(String name) {
+        return getReactiveLock(name, options);
+    }
+
+    /**
+     * 按指定参数获取基于Project Reactor的分布式锁,同名锁仅在首次创建时应用参数
+     *
+     * @param name
+     * @param options
+     * @return
+     */
+    public ReactiveJedisLock getReactiveLock(String name, LockOptions options) {
+        return new ReactiveJedisLock(getLock(name, options));
+    }
+
+    /**
+     * 获取公平锁,多个访问者按请求顺序获取锁资源
+     *
+     * @param name
+     * @return
+     */
+    public JedisLock getFairLock(String name) {
+        return getFairLock(name, options);
+    }
+
+    /**
+     * 按指定参数获取公平锁,同名锁仅在首次创建时应用参数,公平锁不支持本地移交模式
+     *
+     * @param name
+     * @param options
+     * @return
+     */
+    public JedisLock getFairLock(String name, LockOptions options) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(options);
+        return fairLockMap.get(name, key -> newLock(i -> new JedisFairLock(key, clients.get(i),
+                hubs.get(i), scripts, watchDog, resolve(options))));
+    }
+
+    /**
+     * 获取读写锁
+     *
+     * @param name
+     * @return
+     */
+    public JedisReadWriteLock getReadWriteLock(String name) {
+        return getReadWriteLock(name, options);
+    }
+
+    /**
+     * 按指定参数获取读写锁,同名锁仅在首次创建时应用参数;红锁模式下读锁和写锁分别由各个节点上的子锁组成红锁
+     *
+     * @param name
+     * @param options
+     * @return
+     */
+    public JedisReadWriteLock getReadWriteLock(String name, LockOptions options) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(options);
+        return readWriteLockMap.get(name, key -> {
+            List<JedisReadWriteLock> locks = new ArrayList<>();
+            LockOptions resolved = resolve(options);
+            for (int i = 0; i < clients.size(); i++) {
+                locks.add(new JedisReadWriteLock(key, clients.get(i), hubs.get(i), scripts, watchDog, resolved));
+            }
+            if (lockType != LockType.RED) {
+                return locks.get(0);
+            }
+            List<JedisLock> readLocks = new ArrayList<>();
+            List<JedisLock> writeLocks = new ArrayList<>();
+            locks.forEach(lock -> {
+                readLocks.add(lock.readLock());
+                writeLocks.add(lock.writeLock());
+            });
+            return new JedisReadWriteLock(new JedisRedLock(readLocks), new JedisRedLock(writeLocks));
+        });
+    }
+
+    /**
+     * 获取分布式信号量
+     *
+     * @param name
+     * @return
+     */
+    public JedisSemaphore getSemaphore(String name) {
+        return getSemaphore(name, options);
+    }
+
+    /**
+     * 按指定参数获取分布式信号量,同名信号量仅在首次创建时应用参数,红锁模式下不支持
+     *
+     * @param name
+     * @param options
+     * @return
+     */
+    public JedisSemaphore getSemaphore(String name, LockOptions options) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(options);
+        if (lockType == LockType.RED) {
+            throw new JedisLockException("Features not supported");
+        }
+        return semaphoreMap.computeIfAbsent(name, key -> new JedisSemaphore(key, clients.get(0), hubs.get(0),
+                scripts, watchDog, resolve(options)));
+    }
+
+    /**
+     * 获取分布式闭锁,红锁模式下不支持
+     *
+     * @param name
+     * @return
+     */
+    public JedisCountDownLatch getCountDownLatch(String name) {
+        Objects.requireNonNull(name);
+        if (lockType == LockType.RED) {
+            throw new JedisLockException("Features not supported");
+        }
+        return latchMap.computeIfAbsent(name, key -> new JedisCountDownLatch(key, clients.get(0), hubs.get(0),
+                scripts, watchDog));
+    }
+
+    /**
+     * 获取分布式循环栅栏,红锁模式下不支持
+     *
+     * @param name
+     * @return
+     */
+    public JedisCyclicBarrier getCyclicBarrier(String name) {
+        Objects.requireNonNull(name);
+        if (lockType == LockType.RED) {
+            throw new JedisLockException("Features not supported");
+        }
+        return barrierMap.computeIfAbsent(name, key -> new JedisCyclicBarrier(key, clients.get(0), hubs.get(0),
+                scripts, watchDog));
+    }
+
+    /**
+     * 按锁类型创建锁,红锁模式下每个redis节点对应一个子锁
+     *
+     * @param factory 入参为数据源下标
+     * @return
+     */
+    private JedisLock newLock(IntFunction<JedisLock> factory) {
+        switch (lockType) {
+            case RED:
+                List<JedisLock> locks = new ArrayList<>();
+                for (int i = 0; i < clients.size(); i++) {
+                    locks.add(factory.apply(i));
+                }
+                return new JedisRedLock(locks);
+            default:
+                return factory.apply(0);
+        }
+    }
+
+    /**
+     * 返回所有的分布式锁名称
+     *
+     * @return
+     */
+    public Set<String> getLocks() {
+        return lockMap.names();
+    }
+
+    /**
+     * 设置锁、公平锁及读写锁各自缓存的数量上限,超过上限时按最近访问时间淘汰没有任何线程持有或等待的锁;
+     * 淘汰仅移除缓存中的强引用,仍被引用的锁实例再次getLock时复用,因此与之前返回的实例之间保持可重入
+     *
+     * @param maxLocks
+     */
+    public void setMaxLocks(int maxLocks) {
+        lockMap.setMaxSize(maxLocks);
+        fairLockMap.setMaxSize(maxLocks);
+        readWriteLockMap.setMaxSize(maxLocks);
+    }
+
+    /**
+     * 开启空闲淘汰,超过指定时间未通过getLock访问且没有任何线程持有或等待的锁将被淘汰,由watchdog定时检查;
+     * timeout不大于0时关闭
+     *
+     * @param timeout
+     * @param unit
+     */
+    public synchronized void setIdleTimeout(long timeout, TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        if (Objects.nonNull(evictLease)) {
+            evictLease.cancel();
+            evictLease = null;
+        }
+        if (timeout <= 0) {
+            return;
+        }
+        long nanos = unit.toNanos(timeout);
+        evictLease = watchDog.schedule(() -> {
+            lockMap.evictIdle(nanos, TimeUnit.NANOSECONDS);
+            fairLockMap.evictIdle(nanos, TimeUnit.NANOSECONDS);
+            readWriteLockMap.evictIdle(nanos, TimeUnit.NANOSECONDS);
+        }, Math.max(nanos >> 1, TimeUnit.MILLISECONDS.toNanos(100)), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 开启或关闭本地移交模式,仅对之后创建的锁生效
+     * <p>
+     * 开启后,完全解锁时如果本地存在等待者,则在redis中直接将锁移交给下一个本地等待者,
+     * 省去DEL/PUBLISH以及等待者重新取锁的开销;代价是本地等待者优先于其他JVM中的等待者
+     *
+     * @param localHandoff
+     */
+    public void setLocalHandoff(boolean localHandoff) {
+        this.options = options.toBuilder().localHandoff(localHandoff).build();
+    }
+
+    /**
+     * 设置缺省锁参数,仅对之后通过getLock(name)/getFairLock(name)创建的锁生效
+     *
+     * @param options
+     */
+    public void setDefaultOptions(LockOptions options) {
+        this.options = Objects.requireNonNull(options);
+    }
+
+    /**
+     * 设置指标采集器,连接、订阅及脚本相关的指标立即生效,锁相关的指标仅对之后创建的锁生效;
+     * 锁参数中已指定指标采集器时以锁参数为准
+     *
+     * @param metrics
+     */
+    public void setMetrics(LockMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+        scripts.setMetrics(metrics);
+        clients.forEach(client -> client.setMetrics(metrics));
+        hubs.forEach(hub -> hub.setMetrics(metrics));
+    }
+
+    /**
+     * 锁参数未指定指标采集器时使用全局指标采集器
+     *
+     * @param options
+     * @return
+     */
+    private LockOptions resolve(LockOptions options) {
+        LockMetrics metrics = this.metrics;
+        return options.getMetrics() == LockMetrics.NOOP && metrics != LockMetrics.NOOP ?
+                options.toBuilder().metrics(metrics).build() : options;
+    }
+
+    /**
+     * 返回全局Lua脚本注册中心
+     *
+     * @return
+     */
+    public ScriptRegistry getScriptRegistry() {
+        return scripts;
+    }
+
+    /**
+     * 返回全局watchdog
+     *
+     * @return
+     */
+    public LockWatchDog getWatchDog() {
+        return watchDog;
+    }
+
+    /**
+     * 关闭manager,停止watchdog及其线程组并关闭订阅连接,之后持有的锁不再续期、等待者不再收到解锁消息;
+     * 仅关闭由manager自身创建的LockCommand,调用方传入的LockCommand(如LettuceLockCommand、InMemoryLockCommand)、
+     * 连接池、JedisCluster及RedisClient由调用方关闭
+     */
+    public synchronized void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        if (Objects.nonNull(evictLease)) {
+            evictLease.cancel();
+            evictLease = null;
+        }
+        watchDog.shutdown();
+        hubs.forEach(SubscribeHub::close);
+        owned.forEach(LockCommand::close);
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.JedisLockException;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并锁,JedisRedLock超类
+ * <p>
+ * 取锁时先并行向所有子锁发起一次不等待的取锁请求,N/2+1个子锁成功即返回,成功数量已不可能达到N/2+1时立即失败;
+ * 存在竞争需要等待时回滚已获取的子锁,再并行等待所有子锁,同样在达到或已不可能达到法定数量时立即结束并取消其余等待;
+ * 多个竞争者各自持有少数子锁时,各子锁的等待在超时后结束并回滚,不会互相等待。
+ * 每次取锁成功的子锁按线程记录,解锁时仅并行释放这些子锁
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/18 2:01 下午
+ */
+public abstract class JedisMultiLock implements JedisLock {
+    protected List<JedisLock> locks;
+    /**
+     * 各个持有者每次(含重入)取锁成功的子锁,持有者为调用线程或LockToken
+     */
+    private Map<Object, Deque<List<Node>>> holds = new ConcurrentHashMap<>();
+    /**
+     * 锁名称及指标采集器,取自第一个JedisReentrantLock类型的子锁
+     */
+    private String name;
+    private LockMetrics metrics = LockMetrics.NOOP;
+
+    protected JedisMultiLock(List<JedisLock> locks) {
+        this.locks = locks;
+        if (Objects.nonNull(locks)) {
+            locks.stream().filter(lock -> lock instanceof JedisReentrantLock).findFirst().ifPresent(lock -> {
+                this.name = ((JedisReentrantLock) lock).name;
+                this.metrics = ((JedisReentrantLock) lock).getOptions().getMetrics();
+            });
+        }
+    }
+
+    @Override
+    public void lock() {
+        Objects.requireNonNull(locks);
+        long waitTime = locks.size() * 1500;//总最大等待时间
+        while (true) {
+            if (tryLock(waitTime, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+            metrics.onRetry(name);
+        }
+    }
+
+    /**
+     * 异步取锁,每轮等待时间与lock()一致,取锁失败后继续下一轮,直至成功
+     *
+     * @return
+     */
+    @Override
+    public CompletableFuture<Void> lockAsync() {
+        Objects.requireNonNull(locks);
+        long waitTime = locks.size() * 1500;//总最大等待时间
+        return lockAsync(bind(), Thread.currentThread(), waitTime);
+    }
+
+    /**
+     * 以指定持有者异步取锁,子锁绑定不与线程关联的访问者,之后通过unlockAsync(owner)在任意线程中解锁
+     *
+     * @param owner
+     * @return
+     */
+    protected CompletableFuture<Void> lockAsync(Object owner) {
+        Objects.requireNonNull(locks);
+        return lockAsync(bind(Objects.requireNonNull(owner)), owner, locks.size() * 1500);
+    }
+
+    private CompletableFuture<Void> lockAsync(List<Node> nodes, Object owner, long waitTime) {
+        return acquire(nodes, owner, waitTime, -1L, TimeUnit.MILLISECONDS).thenCompose(result -> {
+            if (result) {
+                return CompletableFuture.completedFuture(null);
+            }
+            metrics.onRetry(name);
+            return lockAsync(nodes, owner, waitTime);
+        });
+    }
+
+    @Override
+    public boolean tryLock() {
+        return tryLockInner(-1L, -1L, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryLockAsync() {
+        return acquire(-1L, -1L, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) {
+        return tryLockInner(time, -1L, unit);
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) {
+        if (leaseTime <= 0) {
+            throw new JedisLockException("Parameter leaseTime must be > 0");
+        }
+        return tryLockInner(waitTime, leaseTime, unit);
+    }
+
+    /**
+     * @param time      为-1时表示不等待
+     * @param leaseTime 子锁的固定租期,为-1时使用子锁参数中的过期时间
+     * @param unit
+     * @return
+     */
+    private boolean tryLockInner(long time, long leaseTime, TimeUnit unit) {
+        return acquire(time, leaseTime, unit).join();
+    }
+
+    /**
+     * 取锁,子锁的访问者在调用线程中绑定,各个子锁的取锁请求由子锁的工作线程执行
+     *
+     * @param time      为-1时表示不等待
+     * @param leaseTime 子锁的固定租期,为-1时使用子锁参数中的过期时间
+     * @param unit
+     * @return
+     */
+    protected CompletableFuture<Boolean> acquire(long time, long leaseTime, TimeUnit unit) {
+        return acquire(bind(), Thread.currentThread(), time, leaseTime, unit);
+    }
+
+    /**
+     * 以指定持有者异步尝试取锁
+     *
+     * @param owner
+     * @param time      为-1时表示不等待
+     * @param leaseTime 子锁的固定租期,为-1时使用子锁参数中的过期时间
+     * @param unit
+     * @return
+     */
+    protected CompletableFuture<Boolean> tryLockAsync(Object owner, long time, long leaseTime, TimeUnit unit) {
+        Objects.requireNonNull(locks);
+        return acquire(bind(Objects.requireNonNull(owner)), owner, time, leaseTime, unit);
+    }
+
+    /**
+     * 在调用线程中为各个子锁绑定访问者
+     *
+     * @return
+     */
+    private List<Node> bind() {
+        return bind(null);
+    }
+
+    /**
+     * 为各个子锁绑定访问者,owner不为null时绑定新建的访问者
+     *
+     * @param owner
+     * @return
+     */
+    private List<Node> bind(Object owner) {
+        List<Node> nodes = new ArrayList<>(locks.size());
+        locks.stream().filter(Objects::nonNull).forEach(lock -> nodes.add(new Node(lock, Objects.nonNull(owner))));
+        return nodes;
+    }
+
+    /**
+     * @param nodes     已绑定访问者的子锁
+     * @param owner     调用线程或LockToken,取锁成功的子锁记录在该持有者下
+     * @param time
+     * @param leaseTime
+     * @param unit
+     * @return
+     */
+    private CompletableFuture<Boolean> acquire(List<Node> nodes, Object owner, long time, long leaseTime,
+                                               TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        if (locks.size() < 3) {
+            throw new JedisLockException("More than 3 redis nodes are required");
+        }
+        long beginTime = System.currentTimeMillis(), startTime = System.nanoTime();//记录开始时间
+        long remainTime = time != -1L ? unit.toMillis(time) : -1L;
+        long lockTime = getLockWaitTime(remainTime);//获取每个子锁的超时时间
+        long lease = leaseTime != -1L ? unit.toMillis(leaseTime) : -1L;
+        int required = locks.size() - failedLocksLimit();
+        //并行发起一次不等待的取锁请求,无竞争时耗时取决于第N/2+1快的节点
+        Quorum fast = new Quorum(required, nodes.size());
+        nodes.forEach(node -> node.tryLockAsync(-1L, lease).whenComplete((result, e) ->
+                fast.arrive(node, result, e)));
+        return fast.result.thenCompose(result -> {
+            if (result) {
+                return CompletableFuture.completedFuture(fast);
+            }
+            CompletableFuture<Void> rollback = release(fast.rollback());
+            if (remainTime == -1L) {
+                return rollback.thenApply(v -> fast);
+            }
+            //存在竞争,回滚后并行等待各个子锁
+            Quorum retry = new Quorum(required, nodes.size());
+            return rollback.thenCompose(v -> acquireAll(nodes, retry, lockTime, lease));
+        }).thenCompose(quorum -> {
+            if (quorum.result.join()) {
+                //获取锁的使用时间,锁使用时间<失效时间时，锁才算获取成功,排除tryLock
+                if (remainTime == -1L || remainTime - (System.currentTimeMillis() - beginTime) > 0L) {
+                    holds.computeIfAbsent(owner, key -> new ConcurrentLinkedDeque<>()).push(quorum.held);
+                    return CompletableFuture.completedFuture(true);
+                }
+                return release(quorum.rollback()).thenApply(v -> false);//取锁超时后释放已获取的子锁
+            }
+            return CompletableFuture.completedFuture(false);
+        }).whenComplete((result, e) -> metrics.onMultiAcquire(name, System.nanoTime() - startTime,
+                Boolean.TRUE.equals(result)));
+    }
+
+    /**
+     * 并行等待各个子锁,达到法定数量或已不可能达到时取消其余等待
+     *
+     * @param nodes
+     * @param quorum
+     * @param lockTime
+     * @param lease
+     * @return
+     */
+    private CompletableFuture<Quorum> acquireAll(List<Node> nodes, Quorum quorum, long lockTime, long lease) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(nodes.size());
+        nodes.forEach(node -> {
+            CompletableFuture<Boolean> future = node.tryLockAsync(lockTime, lease);
+            futures.add(future);
+            future.whenComplete((result, e) -> quorum.arrive(node, result, e));
+        });
+        return quorum.result.thenCompose(result -> {
+            for (int i = 0; i < nodes.size(); i++) {
+                if (nodes.get(i).isCancellable(lockTime)) {
+                    futures.get(i).cancel(false);//之后到达的取锁结果由子锁自行释放
+                }
+            }
+            return result ? CompletableFuture.completedFuture(quorum) :
+                    release(quorum.rollback()).thenApply(v -> quorum);//当失败次数达到阈值时，释放已获取的子锁
+        });
+    }
+
+    /**
+     * 并行释放目标子锁
+     *
+     * @param nodes
+     * @return
+     */
+    private static CompletableFuture<Void> release(List<Node> nodes) {
+        return CompletableFuture.allOf(nodes.stream().map(Node::unlockAsync).toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * 即使某些redis节点根本就没有加锁成功,
+     * 但为了防止某些节点获取到锁但是客户端没有得到响应而导致接下来的一段时间不能被重新获取锁
+     *
+     * @param locks
+     */
+    protected abstract void unlockInner(List<JedisLock> locks);
+
+    /**
+     * 计算每个redis节点的拿锁时间
+     *
+     * @param remainTime
+     * @return
+     */
+    protected abstract long getLockWaitTime(long remainTime);
+
+    /**
+     * 计算允许失败的次数
+     *
+     * @return
+     */
+    protected abstract int failedLocksLimit();
+
+    @Override
+    public CompletableFuture<Boolean> tryLockAsync(long time, TimeUnit unit) {
+        return acquire(time, -1L, unit);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryLockAsync(long waitTime, long leaseTime, TimeUnit unit) {
+        if (leaseTime <= 0) {
+            throw new JedisLockException("Parameter leaseTime must be > 0");
+        }
+        return acquire(waitTime, leaseTime, unit);
+    }
+
+    /**
+     * 并行释放当前线程最近一次取锁成功的子锁,没有取锁记录时释放所有子锁
+     */
+    @Override
+    public void unlock() {
+        List<Node> nodes = pollHeld();
+        if (Objects.isNull(nodes)) {
+            unlockInner(locks);
+            return;
+        }
+        release(nodes).join();
+    }
+
+    /**
+     * 是否空闲,没有线程持有且各个子锁均空闲
+     *
+     * @return
+     */
+    protected boolean isIdle() {
+        return holds.isEmpty() && Objects.nonNull(locks) && locks.stream().allMatch(LockRegistry::isIdle);
+    }
+
+    /**
+     * 取出当前线程最近一次取锁成功的子锁
+     *
+     * @return
+     */
+    private List<Node> pollHeld() {
+        return pollHeld(Thread.currentThread());
+    }
+
+    /**
+     * 取出目标持有者最近一次取锁成功的子锁
+     *
+     * @param owner
+     * @return
+     */
+    private List<Node> pollHeld(Object owner) {
+        Deque<List<Node>> deque = holds.get(owner);
+        if (Objects.isNull(deque)) {
+            return null;
+        }
+        List<Node> nodes = deque.pollFirst();
+        if (deque.isEmpty()) {
+            holds.remove(owner, deque);
+        }
+        return nodes;
+    }
+
+    @Override
+    public CompletableFuture<Void> unlockAsync() {
+        List<Node> nodes = pollHeld();
+        return release(Objects.nonNull(nodes) ? nodes : bind());
+    }
+
+    /**
+     * 释放目标持有者最近一次取锁成功的子锁
+     *
+     * @param owner
+     * @return
+     */
+    protected CompletableFuture<Void> unlockAsync(Object owner) {
+        List<Node> nodes = pollHeld(Objects.requireNonNull(owner));
+        if (Objects.isNull(nodes)) {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(new JedisLockException(String.format("attempt to unlock lock, " +
+                    "not locked by owner: %s", owner)));
+            return result;
+        }
+        return release(nodes);
+    }
+
+    @Override
+    public void forceUnlock() {
+        holds.clear();
+        locks.forEach(lock -> {
+            try {
+                lock.forceUnlock();
+            } catch (JedisLockException e) {
+                //...
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> forceUnlockAsync() {
+        holds.clear();
+        return CompletableFuture.allOf(locks.stream().filter(Objects::nonNull).map(lock -> {
+            try {
+                return lock.forceUnlockAsync().exceptionally(e -> null);
+            } catch (JedisLockException e) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }).toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * 子锁,在调用线程中绑定访问者,工作线程中的取锁、回滚以及之后的解锁均作用于调用线程对应的持有者;
+     * 显式持有者绑定新建的访问者,与线程无关;非JedisReentrantLock类型的子锁无法绑定访问者,直接使用其异步方法
+     */
+    private static class Node {
+        private JedisLock lock;
+        private LockVisitor visitor;
+
+        private Node(JedisLock lock, boolean detached) {
+            this.lock = lock;
+            if (lock instanceof JedisReentrantLock) {
+                JedisReentrantLock reentrantLock = (JedisReentrantLock) lock;
+                this.visitor = detached ? reentrantLock.newVisitor() : reentrantLock.acquireVisitor();
+            }
+        }
+
+        /**
+         * 限时等待由子锁的解锁消息驱动,单次尝试为非阻塞的脚本调用,均不占用工作线程
+         *
+         * @param waitTime  小于0时表示不等待
+         * @param leaseTime 小于0时使用子锁参数中的过期时间
+         * @return
+         */
+        private CompletableFuture<Boolean> tryLockAsync(long waitTime, long leaseTime) {
+            try {
+                if (Objects.nonNull(visitor)) {
+                    return ((JedisReentrantLock) lock).lockAsync(visitor, Math.max(waitTime, 0L), leaseTime,
+                            TimeUnit.MILLISECONDS);
+                }
+                if (leaseTime < 0) {
+                    return waitTime < 0 ? lock.tryLockAsync() : lock.tryLockAsync(waitTime, TimeUnit.MILLISECONDS);
+                }
+                return lock.tryLockAsync(Math.max(waitTime, 0L), leaseTime, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                CompletableFuture<Boolean> result = new CompletableFuture<>();
+                result.completeExceptionally(e);
+                return result;
+            }
+        }
+
+        /**
+         * 限时等待是否可以取消,只有事件驱动的等待在取消后会释放之后到达的取锁结果
+         *
+         * @param waitTime
+         * @return
+         */
+        private boolean isCancellable(long waitTime) {
+            return Objects.nonNull(visitor) && waitTime > 0;
+        }
+
+        /**
+         * 解锁,异常时忽略
+         *
+         * @return
+         */
+        private CompletableFuture<Void> unlockAsync() {
+            try {
+                return (Objects.nonNull(visitor) ? ((JedisReentrantLock) lock).unlockAsync(visitor) :
+                        lock.unlockAsync()).exceptionally(e -> null);
+            } catch (RuntimeException e) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+    }
+
+    /**
+     * 统计子锁的取锁结果,达到法定数量或已不可能达到时完成判定
+     */
+    private static class Quorum {
+        private final int required;
+        private final int failedLimit;
+        private int acquired;
+        private int failed;
+        private boolean decided;
+        /**
+         * 判定完成之前取锁成功或结果未知(异常,可能已加锁但客户端未收到响应)的子锁
+         */
+        private List<Node> held = new ArrayList<>();
+        private CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Quorum(int required, int nodes) {
+            this.required = required;
+            this.failedLimit = nodes - required;
+        }
+
+        private void arrive(Node node, Boolean result, Throwable e) {
+            boolean locked = Objects.isNull(e) && Boolean.TRUE.equals(result);
+            Boolean complete = null;
+            boolean release = false;
+            synchronized (this) {
+                if (decided) {
+                    release = locked;//判定完成之后才取锁成功的子锁直接释放
+                } else {
+                    if (locked || Objects.nonNull(e)) {
+                        held.add(node);
+                    }
+                    if (locked && ++acquired >= required) {
+                        complete = decided = true;
+                    } else if (!locked && ++failed > failedLimit) {
+                        decided = true;
+                        complete = false;
+                    }
+                }
+            }
+            if (release) {
+                node.unlockAsync();
+            }
+            if (Objects.nonNull(complete)) {
+                this.result.complete(complete);
+            }
+        }
+
+        /**
+         * 判定为失败并返回需要回滚的子锁,之后才取锁成功的子锁由arrive直接释放
+         *
+         * @return
+         */
+        private synchronized List<Node> rollback() {
+            decided = true;
+            List<Node> result = held;
+            held = new ArrayList<>();
+            return result;
+        }
+    }
+}
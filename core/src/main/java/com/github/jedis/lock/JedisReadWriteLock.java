@@ -0,0 +1,263 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import redis.clients.util.SafeEncoder;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 读写锁
+ * <p>
+ * 读锁共享、写锁排他,二者均可重入;持有写锁的访问者可以继续获取读锁,随后释放写锁即完成锁降级,不支持锁升级。
+ * redis中使用hash记录模式(mode)及每个持有者的重入次数,读持有者的field为visitorId,写持有者为visitorId:write;
+ * 每个持有者的过期时间单独记录在zset中,由各自的watchdog续期,取锁时清理已过期的持有者。
+ * Cluster模式下zset通过hash tag与锁位于同一slot,因此锁名称中不能包含'{'和'}'
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/31 2:40 下午
+ */
+public class JedisReadWriteLock {
+    private JedisLock readLock;
+    private JedisLock writeLock;
+
+    protected JedisReadWriteLock(JedisLock readLock, JedisLock writeLock) {
+        this.readLock = readLock;
+        this.writeLock = writeLock;
+    }
+
+    protected JedisReadWriteLock(String name, LockCommand client, SubscribeHub hub, ScriptRegistry scripts,
+                                 LockWatchDog watchDog, LockOptions options) {
+        options = options.toBuilder().localHandoff(false).build();//读写锁不支持本地移交模式
+        Shared shared = new Shared(name);
+        ReadLock readLock = new ReadLock(name, client, hub, scripts, watchDog, options, shared);
+        WriteLock writeLock = new WriteLock(name, client, hub, scripts, watchDog, options, shared);
+        //读写锁共用一个通道,解锁时唤醒所有等待者,由等待者各自判断能否取锁
+        shared.listener = new SubscribeListener(Integer.MAX_VALUE, () -> {
+            readLock.cancelWatchDog();
+            writeLock.cancelWatchDog();
+        });
+        this.readLock = readLock;
+        this.writeLock = writeLock;
+    }
+
+    /**
+     * 返回读锁
+     *
+     * @return
+     */
+    public JedisLock readLock() {
+        return readLock;
+    }
+
+    /**
+     * 返回写锁
+     *
+     * @return
+     */
+    public JedisLock writeLock() {
+        return writeLock;
+    }
+
+    /**
+     * 读锁和写锁均空闲时才能淘汰
+     *
+     * @return
+     */
+    protected boolean isIdle() {
+        return LockRegistry.isIdle(readLock) && LockRegistry.isIdle(writeLock);
+    }
+
+    /**
+     * 读锁与写锁共享的状态,同一线程在读锁和写锁上使用同一个访问者,锁降级时才能识别为同一持有者
+     */
+    private static class Shared {
+        private ThreadLocal<LockVisitor> visitors = new ThreadLocal<>();
+        private byte[] timeoutKey;
+        private volatile SubscribeListener listener;
+
+        private Shared(String name) {
+            this.timeoutKey = SafeEncoder.encode(String.format("jedis_lock_rw_timeout:{%s}", name));
+        }
+    }
+
+    private abstract static class RwLock extends JedisReentrantLock {
+        protected Shared shared;
+
+        private RwLock(String name, LockCommand client, SubscribeHub hub, ScriptRegistry scripts,
+                       LockWatchDog watchDog, LockOptions options, Shared shared) {
+            super(name, client, hub, scripts, watchDog, options);
+            this.shared = shared;
+        }
+
+        @Override
+        protected Long forceReleaseLock() {
+            return (Long) evalScript(Constants.RW_FORCE_UNLOCK_SCRIPT, 2, nameBytes, shared.timeoutKey);
+        }
+
+        @Override
+        protected void renewLock(LockVisitor visitor, long leaseTime) {
+            evalScript(Constants.RW_UPDATE_TTL_SCRIPT, 2, nameBytes, shared.timeoutKey, getField(visitor),
+                    getArgs(visitor, leaseTime)[2], now());
+        }
+
+        /**
+         * 返回访问者在hash中对应的field
+         *
+         * @param visitor
+         * @return
+         */
+        protected abstract byte[] getField(LockVisitor visitor);
+
+        @Override
+        protected LockVisitor acquireVisitor() {
+            LockVisitor visitor = shared.visitors.get();
+            if (Objects.isNull(visitor)) {
+                visitor = new LockVisitor(nameBytes, ttlBytes);
+                shared.visitors.set(visitor);
+            }
+            return visitor;
+        }
+
+        @Override
+        protected void resetVisitor() {
+            shared.visitors.remove();
+        }
+
+        @Override
+        protected SubscribeListener.Waiter subscribe(LockVisitor visitor, Runnable signal) {
+            SubscribeListener.Waiter waiter = Objects.isNull(signal) ? shared.listener.subscribe() :
+                    shared.listener.subscribe(signal);
+            hub.subscribe(name, shared.listener);
+            return waiter;
+        }
+
+        @Override
+        protected void unsubscribe(LockVisitor visitor, SubscribeListener.Waiter waiter) {
+            shared.listener.unsubscribe(waiter);
+            hub.unsubscribe(name);
+        }
+
+        @Override
+        protected boolean isIdle() {
+            return super.isIdle() && !shared.listener.hasWaiters();
+        }
+
+        protected static byte[] now() {
+            return SafeEncoder.encode(String.valueOf(System.currentTimeMillis()));
+        }
+    }
+
+    private static class ReadLock extends RwLock {
+        /**
+         * 读锁允许多个访问者同时持有,每个访问者拥有独立的续期租约
+         */
+        private Map<LockVisitor, LockWatchDog.Lease> leases = new ConcurrentHashMap<>();
+
+        private ReadLock(String name, LockCommand client, SubscribeHub hub, ScriptRegistry scripts,
+                         LockWatchDog watchDog, LockOptions options, Shared shared) {
+            super(name, client, hub, scripts, watchDog, options, shared);
+        }
+
+        @Override
+        protected Long tryAcquireLock(LockVisitor visitor, long leaseTime, boolean wait) {
+            return (Long) evalScript(Constants.RW_READ_LOCK_SCRIPT, 2, nameBytes, shared.timeoutKey,
+                    visitor.getIdBytes(), getArgs(visitor, leaseTime)[2], now());
+        }
+
+        @Override
+        protected CompletableFuture<Long> tryAcquireLockAsync(LockVisitor visitor, long leaseTime, boolean wait) {
+            return evalScriptAsync(Constants.RW_READ_LOCK_SCRIPT, 2, nameBytes, shared.timeoutKey, visitor.getIdBytes(),
+                    getArgs(visitor, leaseTime)[2], now()).thenApply(Long.class::cast);
+        }
+
+        @Override
+        protected Long releaseLock(LockVisitor visitor) {
+            return (Long) evalScript(Constants.RW_READ_UNLOCK_SCRIPT, 2, nameBytes, shared.timeoutKey,
+                    visitor.getIdBytes());
+        }
+
+        @Override
+        protected byte[] getField(LockVisitor visitor) {
+            return visitor.getIdBytes();
+        }
+
+        /**
+         * 读锁共享,本地不排队
+         *
+         * @return
+         */
+        @Override
+        protected boolean isLocalQueued() {
+            return false;
+        }
+
+        @Override
+        protected void watchDog(LockVisitor visitor) {
+            LockWatchDog.Lease lease = leases.put(visitor, schedule(visitor));
+            if (Objects.nonNull(lease)) {
+                lease.cancel();
+            }
+        }
+
+        @Override
+        protected void cancelWatchDog(LockVisitor visitor) {
+            LockWatchDog.Lease lease = leases.remove(visitor);
+            if (Objects.nonNull(lease)) {
+                lease.cancel();
+            }
+        }
+
+        @Override
+        protected void cancelWatchDog() {
+            leases.keySet().forEach(this::cancelWatchDog);
+        }
+    }
+
+    private static class WriteLock extends RwLock {
+        private WriteLock(String name, LockCommand client, SubscribeHub hub, ScriptRegistry scripts,
+                          LockWatchDog watchDog, LockOptions options, Shared shared) {
+            super(name, client, hub, scripts, watchDog, options, shared);
+        }
+
+        @Override
+        protected Long tryAcquireLock(LockVisitor visitor, long leaseTime, boolean wait) {
+            return (Long) evalScript(Constants.RW_WRITE_LOCK_SCRIPT, 2, nameBytes, shared.timeoutKey,
+                    visitor.getIdBytes(), getArgs(visitor, leaseTime)[2], now());
+        }
+
+        @Override
+        protected CompletableFuture<Long> tryAcquireLockAsync(LockVisitor visitor, long leaseTime, boolean wait) {
+            return evalScriptAsync(Constants.RW_WRITE_LOCK_SCRIPT, 2, nameBytes, shared.timeoutKey, visitor.getIdBytes(),
+                    getArgs(visitor, leaseTime)[2], now()).thenApply(Long.class::cast);
+        }
+
+        @Override
+        protected Long releaseLock(LockVisitor visitor) {
+            return (Long) evalScript(Constants.RW_WRITE_UNLOCK_SCRIPT, 2, nameBytes, shared.timeoutKey,
+                    visitor.getIdBytes());
+        }
+
+        @Override
+        protected byte[] getField(LockVisitor visitor) {
+            return SafeEncoder.encode(visitor.getId() + ":write");
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.github.jedis.lock;
 import com.github.jedis.exceptions.JedisLockException;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 红锁
@@ -34,13 +35,16 @@ public class JedisRedLock extends JedisMultiLock {
     @Override
     protected void unlockInner(List<JedisLock> locks) {
         Objects.requireNonNull(locks);
+        //在调用线程中发起各个子锁的异步解锁,访问者与调用线程一致,各个节点并行释放
+        List<CompletableFuture<Void>> futures = new ArrayList<>(locks.size());
         locks.forEach(lock -> {
             try {
-                lock.unlock();
+                futures.add(lock.unlockAsync().exceptionally(e -> null));
             } catch (JedisLockException e) {
                 //...
             }
         });
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
     }
 
     @Override
@@ -0,0 +1,1213 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.JedisLockException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单点可重入锁实现
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/3 6:09 下午
+ */
+public class JedisReentrantLock implements JedisLock {
+    protected String name;
+    protected LockCommand client;
+    /**
+     * 订阅复用中心,由JedisLockManager按数据源共享
+     */
+    protected SubscribeHub hub;
+    /**
+     * watchdog,定时更新当前锁的ttl
+     */
+    private LockWatchDog watchDog;
+    private volatile LockWatchDog.Lease lease;
+    /**
+     * Lua脚本注册中心,由JedisLockManager统一管理
+     */
+    private ScriptRegistry scripts;
+    /**
+     * 编码后的锁名称和过期时间,由所有访问者共享
+     */
+    protected byte[] nameBytes;
+    protected byte[] ttlBytes;
+    private ThreadLocal<LockVisitor> threadLocal = new ThreadLocal<>();
+    /**
+     * 相关订阅者
+     */
+    private SubscribeListener listener = new SubscribeListener(this::cancelWatchDog);//断线时回调
+    /**
+     * 本地排队器,同一JVM内仅队首访问者与redis交互
+     */
+    private LocalLockQueue localQueue = new LocalLockQueue();
+    /**
+     * 锁参数,包括过期时间、是否由watchdog续期以及是否开启本地移交模式
+     */
+    private LockOptions options;
+    /**
+     * 当前持有锁的访问者及其首次取锁成功的时间,用于判断锁是否空闲以及统计持有时长
+     */
+    private Map<String, Long> lockTimes = new ConcurrentHashMap<>();
+    /**
+     * 以固定租期持有锁的访问者及其租期(毫秒),重入解锁时按该租期重设ttl;以最近一次取锁的模式为准
+     */
+    private Map<String, Long> leaseTimes = new ConcurrentHashMap<>();
+    /**
+     * 不由watchdog续期的访问者及其租期到期任务,到期后让出本地队首并清除持有记录
+     */
+    private Map<String, Expiry> expiries = new ConcurrentHashMap<>();
+
+    protected JedisReentrantLock(String name, LockCommand client, SubscribeHub hub, ScriptRegistry scripts,
+                                 LockWatchDog watchDog, LockOptions options) {
+        this.name = name;
+        this.client = client;
+        this.hub = hub;
+        this.scripts = scripts;
+        this.nameBytes = SafeEncoder.encode(name);
+        this.ttlBytes = SafeEncoder.encode(String.valueOf(options.getLeaseTime()));
+        this.watchDog = watchDog;
+        this.options = options;
+    }
+
+    @Override
+    public void lock() {
+        lock(acquireVisitor());
+    }
+
+    private void lock(LockVisitor visitor) {
+        long startTime = System.nanoTime(), waitTime = 0L;
+        int state = isLocalQueued() ? localQueue.acquire(visitor.getId(), -1L) : LocalLockQueue.HEAD;//本地排队,成为队首后才访问redis
+        if (state == LocalLockQueue.LEASED) {
+            leased(visitor, -1L);//锁已由上一个队首直接移交
+            record(startTime, waitTime, true);
+            return;
+        }
+        try {
+            Long ttl = acquireLock(visitor, -1L, true);
+            if (ttl == -1) {
+                leased(visitor, -1L); //添加watchdog
+                record(startTime, waitTime, true);
+                return;
+            }
+            waitTime = System.nanoTime();
+            SubscribeListener.Waiter waiter = subscribe(visitor);
+            try {
+                while (true) {
+                    options.getMetrics().onRetry(name);
+                    ttl = acquireLock(visitor, -1L, true);
+                    if (ttl == -1) {
+                        leased(visitor, -1L);
+                        break;
+                    }
+                    if (ttl >= 0) {
+                        waiter.park(this, TimeUnit.MILLISECONDS.toNanos(ttl));
+                    }
+                }
+            } finally {
+                unsubscribe(visitor, waiter);
+            }
+            record(startTime, waitTime, true);
+        } catch (RuntimeException e) {
+            record(startTime, waitTime, false);
+            cancelAcquire(visitor);
+            if (state == LocalLockQueue.HEAD) {
+                localQueue.release(visitor.getId());//取锁异常时让出队首
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 事件驱动的异步取锁,等待期间不占用线程,只在收到解锁消息或锁ttl到期时重试;
+     * 回调在watchdog的异步线程组中执行,与续期线程组隔离,后续操作长时间阻塞时建议使用thenXxxAsync切换线程
+     *
+     * @return
+     */
+    @Override
+    public CompletableFuture<Void> lockAsync() {
+        return new AsyncAcquire(acquireVisitor(), -1L, false).start();
+    }
+
+    /**
+     * 以指定访问者异步取锁,访问者不与线程绑定时可在任意线程中解锁
+     *
+     * @param visitor
+     * @return
+     */
+    protected CompletableFuture<Void> lockAsync(LockVisitor visitor) {
+        return new AsyncAcquire(Objects.requireNonNull(visitor), -1L, false).start();
+    }
+
+    /**
+     * 以指定访问者异步取锁,在waitTime内未成功时放弃等待并以false完成;等待由解锁消息驱动,不占用工作线程
+     *
+     * @param visitor
+     * @param waitTime
+     * @param unit
+     * @return
+     */
+    protected CompletableFuture<Boolean> lockAsync(LockVisitor visitor, long waitTime, TimeUnit unit) {
+        return lockAsync(visitor, waitTime, -1L, unit);
+    }
+
+    /**
+     * 以指定访问者异步取锁,在waitTime内未成功时放弃等待并以false完成;成功后锁在leaseTime后自动失效,不会由watchdog续期。
+     * waitTime不大于0时只尝试一次,本地已有访问者持有或竞争时直接以false完成
+     *
+     * @param visitor
+     * @param waitTime
+     * @param leaseTime 固定租期,不大于0时使用锁参数中的过期时间并由watchdog续期
+     * @param unit
+     * @return
+     */
+    protected CompletableFuture<Boolean> lockAsync(LockVisitor visitor, long waitTime, long leaseTime, TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        CompletableFuture<Void> acquire = new AsyncAcquire(Objects.requireNonNull(visitor),
+                leaseTime > 0 ? unit.toMillis(leaseTime) : -1L, waitTime <= 0).start();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        LockWatchDog.Lease timer = waitTime > 0 ? watchDog.scheduleOnce(() -> acquire.cancel(false), waitTime, unit) : null;
+        acquire.whenComplete((v, e) -> {
+            if (Objects.nonNull(timer)) {
+                timer.cancel();
+            }
+            if (acquire.isCancelled()) {
+                result.complete(false);//超时、只尝试一次失败或调用方取消,之后到达的取锁结果由AsyncAcquire释放
+            } else if (Objects.nonNull(e)) {
+                result.completeExceptionally(e);
+            } else if (!result.complete(true)) {
+                unlockAsync(visitor);
+            }
+        });
+        result.whenComplete((v, e) -> {
+            if (result.isCancelled()) {
+                acquire.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public boolean tryLock() {
+        return tryLock(acquireVisitor());
+    }
+
+    private boolean tryLock(LockVisitor visitor) {
+        int state = isLocalQueued() ? localQueue.acquire(visitor.getId(), 0L) : LocalLockQueue.HEAD;
+        if (state == LocalLockQueue.FAILED) {
+            return false;//本地已有访问者持有或正在竞争
+        }
+        long startTime = System.nanoTime();
+        boolean result = false;
+        try {
+            if (acquireLock(visitor, -1L, false) == -1) {
+                leased(visitor, -1L);
+                result = true;
+            }
+        } finally {
+            record(startTime, 0L, result);
+            if (!result && state == LocalLockQueue.HEAD) {
+                localQueue.release(visitor.getId());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryLockAsync() {
+        return lockAsync(acquireVisitor(), 0L, -1L, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) {
+        return tryLock(acquireVisitor(), time, -1L, unit);
+    }
+
+    @Override
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) {
+        if (leaseTime <= 0) {
+            throw new RuntimeException("Parameter leaseTime must be > 0");
+        }
+        return tryLock(acquireVisitor(), waitTime, leaseTime, unit);
+    }
+
+    /**
+     * @param visitor
+     * @param time
+     * @param leaseTime 固定租期,小于0时使用锁参数中的过期时间
+     * @param unit
+     * @return
+     */
+    private boolean tryLock(LockVisitor visitor, long time, long leaseTime, TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        if (time < 0) {
+            throw new RuntimeException("Parameter time must be >= 0");
+        }
+        long lease = leaseTime < 0 ? -1L : unit.toMillis(leaseTime);
+        long startTime = System.nanoTime(), waitTime = 0L;
+        long deadline = startTime + unit.toNanos(time);
+        int state = isLocalQueued() ? localQueue.acquire(visitor.getId(), unit.toNanos(time)) : LocalLockQueue.HEAD;
+        if (state == LocalLockQueue.FAILED) {
+            record(startTime, waitTime, false);
+            return false;
+        }
+        if (state == LocalLockQueue.LEASED) {
+            if (lease > 0) {
+                renewLock(visitor, lease);//移交时使用的是缺省过期时间,重设为指定租期
+            }
+            leased(visitor, lease);
+            record(startTime, waitTime, true);
+            return true;
+        }
+        boolean result = false;
+        try {
+            Long ttl = acquireLock(visitor, lease, true);
+            if (ttl == -1) {
+                leased(visitor, lease);
+                return result = true;
+            }
+            waitTime = System.nanoTime();
+            SubscribeListener.Waiter waiter = subscribe(visitor);
+            try {
+                long remain;
+                while ((remain = deadline - System.nanoTime()) > 0L) {
+                    waiter.park(this, ttl >= 0 ? Math.min(remain, TimeUnit.MILLISECONDS.toNanos(ttl)) : remain);
+                    options.getMetrics().onRetry(name);
+                    ttl = acquireLock(visitor, lease, true);
+                    if (ttl == -1) {
+                        leased(visitor, lease);
+                        return result = true;
+                    }
+                }
+            } finally {
+                unsubscribe(visitor, waiter);
+            }
+        } finally {
+            record(startTime, waitTime, result);
+            if (!result) {
+                cancelAcquire(visitor);//放弃等待
+                if (state == LocalLockQueue.HEAD) {
+                    localQueue.release(visitor.getId());
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 事件驱动的限时异步取锁,等待期间不占用工作线程
+     *
+     * @param time
+     * @param unit
+     * @return
+     */
+    @Override
+    public CompletableFuture<Boolean> tryLockAsync(long time, TimeUnit unit) {
+        if (time < 0) {
+            throw new RuntimeException("Parameter time must be >= 0");
+        }
+        return lockAsync(acquireVisitor(), time, -1L, unit);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryLockAsync(long waitTime, long leaseTime, TimeUnit unit) {
+        if (waitTime < 0) {
+            throw new RuntimeException("Parameter time must be >= 0");
+        }
+        if (leaseTime <= 0) {
+            throw new RuntimeException("Parameter leaseTime must be > 0");
+        }
+        return lockAsync(acquireVisitor(), waitTime, leaseTime, unit);
+    }
+
+    @Override
+    public void unlock() {
+        unlock(acquireVisitor());
+    }
+
+    /**
+     * 调用Lua脚本执行解锁原子操作
+     *
+     * @param visitor
+     */
+    private void unlock(LockVisitor visitor) {
+        if (options.isLocalHandoff() && localQueue.isLastHold(visitor.getId())) {
+            LocalLockQueue.Node next = localQueue.claim(visitor.getId());
+            if (Objects.nonNull(next)) {
+                handoff(visitor, next);
+                return;
+            }
+        }
+        Long result = null;
+        try {
+            result = releaseLock(visitor);
+        } finally {
+            /**
+             * 并发环境下,目标线程可能存在取锁成功但解锁失败的情况，为了避免目标线程多次取锁/解锁操作导致重入次数永远不为0,watchDog不退出导致其他线程取不到锁的情况,
+             * 需要在解锁出现异常时重设当前线程的访问者,自身和其他线程等待孤锁自然失效
+             */
+            if (Objects.isNull(result)) {
+                resetVisitor();
+                cancelWatchDog(visitor);//watchdog exit
+                released(visitor, false);
+                localQueue.release(visitor.getId());
+                return;
+            }
+            if (result == 1) {
+                cancelWatchDog(visitor);
+                released(visitor, true);
+                localQueue.release(visitor.getId());//完全解锁后移交队首
+            } else if (result == 2) {
+                localQueue.unhold(visitor.getId());
+                rearm(visitor);//一次解锁时重设了ttl
+            } else if (result == 0) {
+                cancelWatchDog(visitor);
+                released(visitor, false);
+                localQueue.release(visitor.getId());//锁已失效,避免本地等待者永久挂起
+                throw new JedisLockException(String.format("attempt to unlock lock, not locked by " +
+                        "current thread by visitor id: %s", visitor.getId()));
+            }
+        }
+    }
+
+    /**
+     * 调用Lua脚本在redis中将锁直接移交给本地下一个等待者,无需DEL和PUBLISH
+     *
+     * @param visitor
+     * @param next
+     */
+    private void handoff(LockVisitor visitor, LocalLockQueue.Node next) {
+        Long result = null;
+        try {
+            result = (Long) evalScript(Constants.HANDOFF_UNLOCK_SCRIPT, 1, nameBytes, visitor.getIdBytes(),
+                    ttlBytes, SafeEncoder.encode(next.getVisitorId()));
+        } finally {
+            if (Objects.isNull(result)) {
+                //解锁异常,处理方式同unlock,下一个等待者以队首身份重新取锁
+                resetVisitor();
+                cancelWatchDog(visitor);
+                released(visitor, false);
+                localQueue.complete(next, LocalLockQueue.HEAD);
+            } else if (result == 3) {
+                cancelWatchDog(visitor);//由新持有者添加watchdog
+                released(visitor, true);
+                localQueue.complete(next, LocalLockQueue.LEASED);
+            } else if (result == 2) {
+                localQueue.unhold(visitor.getId());//本地重入计数与redis不一致,放回等待者
+                localQueue.unclaim(next);
+                rearm(visitor);
+            } else {
+                released(visitor, false);
+                localQueue.complete(next, LocalLockQueue.HEAD);
+            }
+        }
+        if (Objects.nonNull(result) && result == 0) {
+            throw new JedisLockException(String.format("attempt to unlock lock, not locked by " +
+                    "current thread by visitor id: %s", visitor.getId()));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> unlockAsync() {
+        LockVisitor visitor = acquireVisitor();
+        return CompletableFuture.runAsync(() -> unlock(visitor), watchDog.getWorkerGroup());
+    }
+
+    /**
+     * 以指定访问者异步解锁,合并锁回滚子锁时使用
+     *
+     * @param visitor
+     * @return
+     */
+    protected CompletableFuture<Void> unlockAsync(LockVisitor visitor) {
+        Objects.requireNonNull(visitor);
+        return CompletableFuture.runAsync(() -> unlock(visitor), watchDog.getWorkerGroup());
+    }
+
+    @Override
+    public void forceUnlock() {
+        Long result = null;
+        try {
+            result = forceReleaseLock();
+        } catch (ClassCastException e) {
+            options.getMetrics().onError(name, e);
+        } finally {
+            if (Objects.nonNull(result)) {
+                if (result == 1) {
+                    cancelWatchDog();//watchdog退出
+                    lockTimes.clear();
+                    leaseTimes.clear();
+                    expiries.keySet().forEach(this::cancelExpiry);
+                }
+                localQueue.reset();//本地队首随之移交
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> forceUnlockAsync() {
+        return CompletableFuture.runAsync(() -> forceUnlock(), watchDog.getWorkerGroup());
+    }
+
+    /**
+     * 取锁成功,指定了固定租期或锁参数关闭了watchdog时无需续期;
+     * 以固定租期重入watchdog续期中的持有时取消续期,锁在该租期结束后失效
+     *
+     * @param visitor
+     * @param leaseTime
+     */
+    private void leased(LockVisitor visitor, long leaseTime) {
+        lockTimes.putIfAbsent(visitor.getId(), System.nanoTime());//重入时保留首次取锁的时间
+        if (leaseTime >= 0) {
+            leaseTimes.put(visitor.getId(), leaseTime);
+            cancelWatchDog(visitor);
+            expireAfter(visitor, leaseTime);
+            return;
+        }
+        leaseTimes.remove(visitor.getId());
+        if (options.isWatchDog()) {
+            cancelExpiry(visitor.getId());
+            watchDog(visitor);
+        } else {
+            expireAfter(visitor, options.getLeaseTime());
+        }
+    }
+
+    /**
+     * 不由watchdog续期的持有在租期结束后由redis自动失效,不会执行unlock;
+     * 在时间轮中注册一次性任务,到期后让出本地队首并清除持有记录,避免本地等待者永久挂起、锁无法被淘汰
+     *
+     * @param visitor
+     * @param leaseTime 租期,单位毫秒
+     */
+    private void expireAfter(LockVisitor visitor, long leaseTime) {
+        Expiry expiry = new Expiry(visitor);
+        Expiry previous = expiries.put(visitor.getId(), expiry);
+        if (Objects.nonNull(previous)) {
+            previous.cancel();
+        }
+        expiry.timer = watchDog.scheduleOnce(expiry, leaseTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 一次解锁时redis按当前租期重设了ttl,未由watchdog续期的持有需要重新计时
+     *
+     * @param visitor
+     */
+    private void rearm(LockVisitor visitor) {
+        if (expiries.containsKey(visitor.getId())) {
+            expireAfter(visitor, getLeaseTime(visitor));
+        }
+    }
+
+    /**
+     * 取消目标访问者的租期到期任务
+     *
+     * @param visitorId
+     */
+    private void cancelExpiry(String visitorId) {
+        Expiry expiry = expiries.remove(visitorId);
+        if (Objects.nonNull(expiry)) {
+            expiry.cancel();
+        }
+    }
+
+    /**
+     * 每隔1/3过期时间重设当前锁ttl
+     *
+     * @param visitor
+     */
+    protected void watchDog(LockVisitor visitor) {
+        cancelWatchDog();//从时间轮中移除租约
+        lease = schedule(visitor);
+    }
+
+    /**
+     * 向全局watchdog注册目标访问者的续期任务
+     *
+     * @param visitor
+     * @return
+     */
+    protected LockWatchDog.Lease schedule(LockVisitor visitor) {
+        return watchDog.schedule(() -> renew(visitor), options.getWatchDogInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * watchdog续期,异常由watchdog忽略并在下一个周期重试
+     *
+     * @param visitor
+     */
+    private void renew(LockVisitor visitor) {
+        try {
+            renewLock(visitor);
+        } catch (RuntimeException e) {
+            options.getMetrics().onRenew(name, false);
+            throw e;
+        }
+        options.getMetrics().onRenew(name, true);
+    }
+
+    /**
+     * 取消目标访问者的续期租约,排他锁同一时刻只有一个持有者,缺省直接取消当前锁的租约
+     *
+     * @param visitor
+     */
+    protected void cancelWatchDog(LockVisitor visitor) {
+        cancelWatchDog();
+    }
+
+    /**
+     * 取消当前锁的续期租约
+     */
+    protected void cancelWatchDog() {
+        LockWatchDog.Lease lease = this.lease;
+        if (Objects.nonNull(lease)) {
+            lease.cancel();
+        }
+    }
+
+    /**
+     * 订阅目标通道,等待信号来临时唤醒当前线程继续拿锁
+     *
+     * @param visitor
+     * @return
+     */
+    protected SubscribeListener.Waiter subscribe(LockVisitor visitor) {
+        return subscribe(visitor, null);
+    }
+
+    /**
+     * 订阅目标通道,signal为null时等待者为当前线程,反之为异步等待者,信号来临时回调signal
+     *
+     * @param visitor
+     * @param signal
+     * @return
+     */
+    protected SubscribeListener.Waiter subscribe(LockVisitor visitor, Runnable signal) {
+        SubscribeListener.Waiter waiter = Objects.isNull(signal) ? listener.subscribe() : listener.subscribe(signal);
+        hub.subscribe(name, listener);
+        return waiter;
+    }
+
+    /**
+     * 取消订阅的目标线程
+     *
+     * @param visitor
+     * @param waiter
+     */
+    protected void unsubscribe(LockVisitor visitor, SubscribeListener.Waiter waiter) {
+        listener.unsubscribe(waiter);
+        hub.unsubscribe(name);
+    }
+
+    /**
+     * 获取当前线程的访问者,首次访问时创建并缓存编码后的参数
+     *
+     * @return
+     */
+    protected LockVisitor acquireVisitor() {
+        LockVisitor visitor = threadLocal.get();
+        if (Objects.isNull(visitor)) {
+            visitor = new LockVisitor(nameBytes, ttlBytes);
+            threadLocal.set(visitor);
+        }
+        return visitor;
+    }
+
+    /**
+     * 创建不与线程绑定的访问者,由LockToken显式持有,同一线程中的多个访问者之间不可重入
+     *
+     * @return
+     */
+    protected LockVisitor newVisitor() {
+        return new LockVisitor(nameBytes, ttlBytes);
+    }
+
+    /**
+     * 重设当前线程的访问者
+     */
+    protected void resetVisitor() {
+        threadLocal.remove();
+    }
+
+    /**
+     * 获取分布式锁
+     *
+     * @param visitor
+     * @param leaseTime 过期时间,小于0时使用锁参数中的过期时间
+     * @param wait      获取失败后是否继续等待
+     * @return
+     */
+    private Long acquireLock(LockVisitor visitor, long leaseTime, boolean wait) {
+        try {
+            return held(visitor, tryAcquireLock(visitor, leaseTime < 0 ? options.getLeaseTime() : leaseTime, wait));
+        } catch (ClassCastException e) {
+            options.getMetrics().onError(name, e);
+            return 100L;//jedis串消息,屏蔽此异常
+        }
+    }
+
+    /**
+     * 异步获取分布式锁,非阻塞客户端下不占用线程等待redis响应
+     *
+     * @param visitor
+     * @param leaseTime 固定租期,小于0时使用锁参数中的过期时间
+     * @return
+     */
+    private CompletableFuture<Long> acquireLockAsync(LockVisitor visitor, long leaseTime) {
+        return tryAcquireLockAsync(visitor, leaseTime < 0 ? options.getLeaseTime() : leaseTime, true).handle((ttl, e) -> {
+            if (Objects.isNull(e)) {
+                return held(visitor, ttl);
+            }
+            Throwable cause = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+            if (cause instanceof ClassCastException) {
+                options.getMetrics().onError(name, cause);
+                return 100L;//jedis串消息,屏蔽此异常
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new CompletionException(cause);
+        });
+    }
+
+    /**
+     * 调用Lua脚本获取分布式锁,如果成功获取到锁资源返回-1,反之为pttl
+     *
+     * @param visitor
+     * @param leaseTime 过期时间,单位毫秒
+     * @param wait      获取失败后是否继续等待
+     * @return
+     */
+    protected Long tryAcquireLock(LockVisitor visitor, long leaseTime, boolean wait) {
+        return (Long) evalScript(Constants.ACQUIRE_LOCK_SCRIPT, 1, getArgs(visitor, leaseTime));
+    }
+
+    /**
+     * tryAcquireLock的异步方式,子类使用不同的取锁脚本时需要同时覆写
+     *
+     * @param visitor
+     * @param leaseTime 过期时间,单位毫秒
+     * @param wait      获取失败后是否继续等待
+     * @return
+     */
+    protected CompletableFuture<Long> tryAcquireLockAsync(LockVisitor visitor, long leaseTime, boolean wait) {
+        return evalScriptAsync(Constants.ACQUIRE_LOCK_SCRIPT, 1, getArgs(visitor, leaseTime))
+                .thenApply(Long.class::cast);
+    }
+
+    /**
+     * 调用Lua脚本执行解锁原子操作,完全解锁成功返回1,一次解锁成功返回2,解锁失败返回0
+     *
+     * @param visitor
+     * @return
+     */
+    protected Long releaseLock(LockVisitor visitor) {
+        return (Long) evalScript(Constants.ACQUIRE_UNLOCK_SCRIPT, 1, getArgs(visitor, getLeaseTime(visitor)));
+    }
+
+    /**
+     * 调用Lua脚本执行暴力解锁,解锁成功返回1,反之返回0
+     *
+     * @return
+     */
+    protected Long forceReleaseLock() {
+        return (Long) evalScript(Constants.ACQUIRE_FORCE_UNLOCK_SCRIPT, 1, nameBytes);
+    }
+
+    /**
+     * 调用Lua脚本刷新锁ttl,由watchdog定时回调
+     *
+     * @param visitor
+     */
+    protected void renewLock(LockVisitor visitor) {
+        renewLock(visitor, options.getLeaseTime());
+    }
+
+    /**
+     * 调用Lua脚本将锁ttl重设为指定的过期时间
+     *
+     * @param visitor
+     * @param leaseTime
+     */
+    protected void renewLock(LockVisitor visitor, long leaseTime) {
+        evalScript(Constants.UPDATE_LOCK_TTL_SCRIPT, 1, getArgs(visitor, leaseTime));
+    }
+
+    /**
+     * 返回脚本参数,过期时间与锁参数一致时直接复用访问者缓存的参数
+     *
+     * @param visitor
+     * @param leaseTime
+     * @return
+     */
+    protected byte[][] getArgs(LockVisitor visitor, long leaseTime) {
+        return leaseTime == options.getLeaseTime() ? visitor.getArgs() : new byte[][]{nameBytes,
+                visitor.getIdBytes(), SafeEncoder.encode(String.valueOf(leaseTime))};
+    }
+
+    /**
+     * 返回访问者当前持有的租期,固定租期持有时为取锁时指定的租期,反之为锁参数中的过期时间
+     *
+     * @param visitor
+     * @return
+     */
+    protected long getLeaseTime(LockVisitor visitor) {
+        Long leaseTime = leaseTimes.get(visitor.getId());
+        return Objects.nonNull(leaseTime) ? leaseTime : options.getLeaseTime();
+    }
+
+    /**
+     * 返回锁参数
+     *
+     * @return
+     */
+    public LockOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 访问者放弃等待时回调,缺省无需处理
+     *
+     * @param visitor
+     */
+    protected void cancelAcquire(LockVisitor visitor) {
+    }
+
+    /**
+     * 是否空闲,即没有任何访问者持有锁、在本地排队或等待解锁消息,由LockRegistry判断能否淘汰
+     *
+     * @return
+     */
+    protected boolean isIdle() {
+        return lockTimes.isEmpty() && !listener.hasWaiters() && localQueue.isIdle();
+    }
+
+    /**
+     * 是否在访问redis之前进行本地排队,缺省开启
+     *
+     * @return
+     */
+    protected boolean isLocalQueued() {
+        return true;
+    }
+
+    /**
+     * 调用Lua脚本,优先使用evalsha,脚本未缓存时回退为eval
+     *
+     * @param script
+     * @param keyCount
+     * @param params
+     * @return
+     */
+    protected Object evalScript(String script, int keyCount, String... params) {
+        return scripts.eval(client, script, keyCount, params);
+    }
+
+    /**
+     * 调用Lua脚本,参数为编码后的二进制形式,避免每次调用重复编码
+     *
+     * @param script
+     * @param keyCount
+     * @param params
+     * @return
+     */
+    protected Object evalScript(String script, int keyCount, byte[]... params) {
+        return scripts.eval(client, script, keyCount, params);
+    }
+
+    /**
+     * 异步调用Lua脚本,非阻塞客户端使用原生异步的evalsha,其他客户端在调用线程中同步执行
+     *
+     * @param script
+     * @param keyCount
+     * @param params
+     * @return
+     */
+    protected CompletableFuture<Object> evalScriptAsync(String script, int keyCount, byte[]... params) {
+        return scripts.evalAsync(client, script, keyCount, params);
+    }
+
+    /**
+     * 取锁结束时回调指标采集器
+     *
+     * @param startTime 发起取锁的时间
+     * @param waitTime  首次取锁失败的时间,为0时表示无需等待
+     * @param acquired
+     */
+    private void record(long startTime, long waitTime, boolean acquired) {
+        LockMetrics metrics = options.getMetrics();
+        if (metrics == LockMetrics.NOOP) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (waitTime != 0L) {
+            metrics.onWait(name, now - waitTime);
+        }
+        metrics.onAcquire(name, now - startTime, acquired);
+    }
+
+    /**
+     * 完全解锁或解锁失败时结束持有时长的统计
+     *
+     * @param visitor
+     * @param success 是否为正常的完全解锁
+     */
+    private void released(LockVisitor visitor, boolean success) {
+        cancelExpiry(visitor.getId());
+        leaseTimes.remove(visitor.getId());
+        Long lockTime = lockTimes.remove(visitor.getId());
+        if (success && Objects.nonNull(lockTime)) {
+            options.getMetrics().onRelease(name, System.nanoTime() - lockTime);
+        }
+    }
+
+    /**
+     * 取锁成功时记录本地重入次数
+     *
+     * @param visitor
+     * @param ttl
+     * @return
+     */
+    private Long held(LockVisitor visitor, Long ttl) {
+        if (Objects.nonNull(ttl) && ttl == -1) {
+            localQueue.hold(visitor.getId());
+        }
+        return ttl;
+    }
+
+    /**
+     * 租期到期任务,仍为目标访问者当前的到期任务时才生效,重入或解锁后被替换、取消的任务不做任何处理
+     */
+    private class Expiry implements Runnable {
+        private final LockVisitor visitor;
+        private volatile LockWatchDog.Lease timer;
+
+        private Expiry(LockVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void run() {
+            if (expiries.remove(visitor.getId(), this)) {
+                leaseTimes.remove(visitor.getId());
+                lockTimes.remove(visitor.getId());
+                localQueue.release(visitor.getId());//锁已在redis中失效,移交本地队首
+            }
+        }
+
+        private void cancel() {
+            LockWatchDog.Lease timer = this.timer;
+            if (Objects.nonNull(timer)) {
+                timer.cancel();
+            }
+        }
+    }
+
+    /**
+     * 异步取锁任务
+     * <p>
+     * 本地排队时以异步节点加入等待队列,成为队首(或锁已移交)后才访问redis;取锁失败时登记为订阅通道上的异步等待者,
+     * 并按锁的ttl在时间轮中注册一次性定时器,解锁消息或定时器到期时在watchdog的异步线程组中重试。
+     * 多个信号合并为一次执行,同一时刻只有一个线程推进该任务。只尝试一次时不加入本地等待队列,失败后以取消结束
+     */
+    private class AsyncAcquire implements Runnable {
+        private final LockVisitor visitor;
+        /**
+         * 固定租期,单位毫秒,小于0时使用锁参数中的过期时间并由watchdog续期
+         */
+        private final long lease;
+        /**
+         * 是否只尝试一次,不等待
+         */
+        private final boolean once;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        /**
+         * 未处理的信号数量,从0变为1的一方负责提交执行
+         */
+        private final AtomicInteger signals = new AtomicInteger();
+        private LocalLockQueue.Node node;
+        /**
+         * 是否为本地队首,取锁异常时需要让出队首
+         */
+        private boolean head;
+        private SubscribeListener.Waiter waiter;
+        private LockWatchDog.Lease timer;
+        private final long startTime = System.nanoTime();
+        private long waitTime;
+        /**
+         * 是否已回调指标采集器,完成后到达的信号同样会进入abandon
+         */
+        private boolean recorded;
+
+        private AsyncAcquire(LockVisitor visitor, long lease, boolean once) {
+            this.visitor = visitor;
+            this.lease = lease;
+            this.once = once;
+        }
+
+        private CompletableFuture<Void> start() {
+            future.whenComplete((v, e) -> {
+                if (future.isCancelled()) {
+                    signal();//调用方取消后由任务线程让出队首
+                }
+            });
+            int state = LocalLockQueue.HEAD;
+            if (isLocalQueued() && once) {
+                state = localQueue.acquire(visitor.getId(), 0L);
+                if (state == LocalLockQueue.FAILED) {
+                    future.cancel(false);//本地已有访问者持有或正在竞争
+                    return future;
+                }
+            } else if (isLocalQueued()) {
+                node = LocalLockQueue.newNode(visitor.getId(), this::signal);
+                state = localQueue.acquire(node);
+            }
+            if (state == LocalLockQueue.FAILED) {
+                return future;//等待成为队首
+            }
+            head = state == LocalLockQueue.HEAD;
+            node = null;
+            signal();
+            return future;
+        }
+
+        private void signal() {
+            if (signals.getAndIncrement() == 0) {
+                try {
+                    watchDog.execute(this);
+                } catch (RejectedExecutionException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            drain(signals.get());
+        }
+
+        /**
+         * 处理已到达的信号,取锁请求尚未返回时暂停,由请求的回调继续处理
+         *
+         * @param missed
+         */
+        private void drain(int missed) {
+            while (true) {
+                if (step(missed)) {
+                    return;
+                }
+                missed = signals.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @param missed
+         * @return 取锁请求是否仍在执行
+         */
+        private boolean step(int missed) {
+            if (future.isDone()) {
+                abandon();
+                return false;
+            }
+            if (Objects.nonNull(node)) {
+                int state = node.getState();
+                if (state == LocalLockQueue.FAILED) {
+                    return false;//移交被取消,继续排队
+                }
+                node = null;
+                if (state == LocalLockQueue.LEASED) {
+                    try {
+                        if (lease > 0) {
+                            renewLock(visitor, lease);//移交时使用的是缺省过期时间,重设为指定租期
+                        }
+                    } catch (RuntimeException e) {
+                        release();//重设租期失败时交还移交的锁
+                        fail(e);
+                        return false;
+                    }
+                    leased(visitor, lease);//锁已由上一个队首直接移交
+                    complete();
+                    return false;
+                }
+                head = true;
+            }
+            CompletableFuture<Long> pending;
+            if (Objects.nonNull(waiter)) {
+                waiter.clear();//本次重试处理已到达的唤醒
+                options.getMetrics().onRetry(name);
+            }
+            try {
+                pending = acquireLockAsync(visitor, lease);
+            } catch (RuntimeException e) {
+                failed(e);
+                return false;
+            }
+            if (pending.isDone()) {
+                acquired(pending);
+                return false;
+            }
+            //非阻塞客户端的回调位于IO线程,切换到异步线程组后继续处理
+            pending.whenComplete((ttl, e) -> {
+                try {
+                    watchDog.execute(() -> {
+                        acquired(pending);
+                        int remain = signals.addAndGet(-missed);
+                        if (remain != 0) {
+                            drain(remain);
+                        }
+                    });
+                } catch (RejectedExecutionException rejected) {
+                    fail(rejected);
+                }
+            });
+            return true;
+        }
+
+        private void acquired(CompletableFuture<Long> pending) {
+            try {
+                Long ttl;
+                try {
+                    ttl = pending.join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+                if (ttl == -1) {
+                    leased(visitor, lease);
+                    complete();
+                    return;
+                }
+                if (once) {
+                    future.cancel(false);//由abandon让出队首
+                    return;
+                }
+                if (Objects.isNull(waiter)) {
+                    waitTime = System.nanoTime();
+                    waiter = subscribe(visitor, this::signal);
+                    signal();//订阅之前可能已经解锁,订阅后立即重试一次
+                    return;
+                }
+                cancelTimer();
+                if (ttl >= 0) {
+                    timer = watchDog.scheduleOnce(this::signal, ttl, TimeUnit.MILLISECONDS);
+                } else {
+                    signal();
+                }
+            } catch (RuntimeException e) {
+                failed(e);
+            }
+        }
+
+        /**
+         * 取锁异常时放弃等待并让出队首
+         *
+         * @param e
+         */
+        private void failed(RuntimeException e) {
+            try {
+                cancelAcquire(visitor);
+            } catch (RuntimeException ignored) {
+                //...
+            } finally {
+                if (head) {
+                    head = false;
+                    localQueue.release(visitor.getId());
+                }
+            }
+            fail(e);
+        }
+
+        private void complete() {
+            cleanup();
+            record(true);
+            if (!future.complete(null)) {
+                release();//调用方已取消,释放刚获取的锁
+            }
+        }
+
+        /**
+         * 调用方取消后放弃取锁,仍在本地排队时等待成为队首后再让出
+         */
+        private void abandon() {
+            cleanup();
+            record(false);
+            if (Objects.nonNull(node)) {
+                int state = node.getState();
+                if (state == LocalLockQueue.FAILED) {
+                    return;
+                }
+                node = null;
+                if (state == LocalLockQueue.LEASED) {
+                    release();
+                    return;
+                }
+                head = true;
+            }
+            if (head) {
+                head = false;
+                try {
+                    cancelAcquire(visitor);
+                } catch (RuntimeException e) {
+                    //...
+                } finally {
+                    localQueue.release(visitor.getId());
+                }
+            }
+        }
+
+        private void release() {
+            head = false;
+            try {
+                unlock(visitor);
+            } catch (RuntimeException e) {
+                //...
+            }
+        }
+
+        private void fail(Throwable e) {
+            cleanup();
+            record(false);
+            future.completeExceptionally(e);
+        }
+
+        private void record(boolean acquired) {
+            if (!recorded) {
+                recorded = true;
+                JedisReentrantLock.this.record(startTime, waitTime, acquired);
+            }
+        }
+
+        private void cleanup() {
+            cancelTimer();
+            if (Objects.nonNull(waiter)) {
+                unsubscribe(visitor, waiter);
+                waiter = null;
+            }
+        }
+
+        private void cancelTimer() {
+            if (Objects.nonNull(timer)) {
+                timer.cancel();
+                timer = null;
+            }
+        }
+    }
+}
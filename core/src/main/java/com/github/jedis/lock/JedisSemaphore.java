@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.JedisLockException;
+import redis.clients.util.SafeEncoder;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分布式信号量
+ * <p>
+ * 每次获取许可都会生成一个租约,一次往返即可获取任意数量的许可;租约在过期时间内有效,
+ * 持有期间由watchdog续期(固定租期模式下不续期),持有者宕机后租约过期,其占用的许可自动归还。
+ * 许可总数需要通过trySetPermits/addPermits设置,未设置时为0。
+ * Cluster模式下各个key通过hash tag位于同一slot,因此名称中不能包含'{'和'}'
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/1 10:20 上午
+ */
+public class JedisSemaphore {
+    private static final String PREFIX = UUID.randomUUID().toString();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private String name;
+    private LockCommand client;
+    private SubscribeHub hub;
+    private ScriptRegistry scripts;
+    private LockWatchDog watchDog;
+    private LockOptions options;
+    private byte[] semaphoreKey;
+    private byte[] leasesKey;
+    private byte[] ttlBytes;
+    /**
+     * 每个租约对应一个续期任务
+     */
+    private Map<String, LockWatchDog.Lease> leases = new ConcurrentHashMap<>();
+    /**
+     * 消息内容为归还的许可数量,最多只有同等数量的等待者能够获取成功,因此仅唤醒同等数量的等待者
+     */
+    private SubscribeListener listener = new SubscribeListener(null) {
+        @Override
+        public void onMessage(String channel, String message) {
+            int permits;
+            try {
+                permits = Integer.parseInt(message);
+            } catch (NumberFormatException e) {
+                permits = Integer.MAX_VALUE;
+            }
+            wake(permits);
+        }
+    };
+
+    protected JedisSemaphore(String name, LockCommand client, SubscribeHub hub, ScriptRegistry scripts,
+                             LockWatchDog watchDog, LockOptions options) {
+        this.name = String.format("jedis_semaphore:{%s}", name);
+        this.client = client;
+        this.hub = hub;
+        this.scripts = scripts;
+        this.watchDog = watchDog;
+        this.options = options;
+        this.semaphoreKey = SafeEncoder.encode(this.name);
+        this.leasesKey = SafeEncoder.encode(String.format("jedis_semaphore_leases:{%s}", name));
+        this.ttlBytes = SafeEncoder.encode(String.valueOf(options.getLeaseTime()));
+    }
+
+    /**
+     * 仅在许可总数未设置过时设置许可总数
+     *
+     * @param permits
+     * @return
+     */
+    public boolean trySetPermits(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException("Parameter permits must be >= 0");
+        }
+        return Long.valueOf(1L).equals(evalScript(Constants.SEMAPHORE_SET_PERMITS_SCRIPT,
+                SafeEncoder.encode(String.valueOf(permits)), SafeEncoder.encode("1")));
+    }
+
+    /**
+     * 增加(permits为负数时减少)许可总数
+     *
+     * @param permits
+     */
+    public void addPermits(int permits) {
+        evalScript(Constants.SEMAPHORE_SET_PERMITS_SCRIPT, SafeEncoder.encode(String.valueOf(permits)),
+                SafeEncoder.encode("0"));
+    }
+
+    /**
+     * 返回当前可用的许可数量
+     *
+     * @return
+     */
+    public int availablePermits() {
+        Long result = (Long) evalScript(Constants.SEMAPHORE_AVAILABLE_SCRIPT, new byte[0], new byte[0], ttlBytes,
+                now());
+        return Objects.isNull(result) ? 0 : result.intValue();
+    }
+
+    /**
+     * 获取1个许可,获取失败则一直阻塞直至成功
+     *
+     * @return 租约标识,归还许可时使用
+     */
+    public String acquire() {
+        return acquire(1);
+    }
+
+    /**
+     * 获取指定数量的许可,获取失败则一直阻塞直至成功
+     *
+     * @param permits
+     * @return 租约标识,归还许可时使用
+     */
+    public String acquire(int permits) {
+        return tryAcquire(permits, -1L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 尝试获取指定数量的许可,获取失败则快速失败
+     *
+     * @param permits
+     * @return 租约标识,获取失败返回null
+     */
+    public String tryAcquire(int permits) {
+        return tryAcquire(permits, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 尝试获取指定数量的许可,如果在指定单位时间内都无法获取则返回null
+     *
+     * @param permits
+     * @param time    小于0时表示一直等待
+     * @param unit
+     * @return 租约标识,获取失败返回null
+     */
+    public String tryAcquire(int permits, long time, TimeUnit unit) {
+        Objects.requireNonNull(unit);
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Parameter permits must be > 0");
+        }
+        String leaseId = String.format("%s:%s:%s", PREFIX, SEQUENCE.incrementAndGet(), permits);
+        byte[][] args = {semaphoreKey, leasesKey, SafeEncoder.encode(leaseId),
+                SafeEncoder.encode(String.valueOf(permits)), ttlBytes, null};
+        Long ttl = tryAcquire(args);
+        if (ttl == -1) {
+            return leased(leaseId);
+        }
+        if (time == 0) {
+            return null;
+        }
+        boolean timed = time > 0;
+        long deadline = System.nanoTime() + unit.toNanos(time);
+        SubscribeListener.Waiter waiter = listener.subscribe();
+        hub.subscribe(name, listener);
+        try {
+            while (true) {
+                long park = TimeUnit.MILLISECONDS.toNanos(ttl);
+                if (timed) {
+                    long remain = deadline - System.nanoTime();
+                    if (remain <= 0L) {
+                        return null;
+                    }
+                    park = Math.min(park, remain);
+                }
+                waiter.park(this, park);
+                ttl = tryAcquire(args);
+                if (ttl == -1) {
+                    return leased(leaseId);
+                }
+            }
+        } finally {
+            listener.unsubscribe(waiter);
+            hub.unsubscribe(name);
+        }
+    }
+
+    /**
+     * 归还租约占用的许可
+     *
+     * @param leaseId
+     */
+    public void release(String leaseId) {
+        Objects.requireNonNull(leaseId);
+        LockWatchDog.Lease lease = leases.remove(leaseId);
+        if (Objects.nonNull(lease)) {
+            lease.cancel();
+        }
+        Long result = (Long) evalScript(Constants.SEMAPHORE_RELEASE_SCRIPT, SafeEncoder.encode(leaseId));
+        if (Objects.nonNull(result) && result == 0) {
+            throw new JedisLockException(String.format("attempt to release permits, lease does not exist " +
+                    "by lease id: %s", leaseId));
+        }
+    }
+
+    private Long tryAcquire(byte[][] args) {
+        args[5] = now();
+        Long ttl = (Long) scripts.eval(client, Constants.SEMAPHORE_ACQUIRE_SCRIPT, 2, args);
+        return Objects.isNull(ttl) ? options.getLeaseTime() : ttl;
+    }
+
+    /**
+     * 获取成功,watchdog模式下为租约注册续期任务
+     *
+     * @param leaseId
+     * @return
+     */
+    private String leased(String leaseId) {
+        if (options.isWatchDog()) {
+            byte[] lease = SafeEncoder.encode(leaseId);
+            leases.put(leaseId, watchDog.schedule(() -> {
+                if (Long.valueOf(0L).equals(evalScript(Constants.SEMAPHORE_RENEW_SCRIPT, lease, new byte[0],
+                        ttlBytes, now()))) {
+                    LockWatchDog.Lease current = leases.remove(leaseId);//租约已失效,停止续期
+                    if (Objects.nonNull(current)) {
+                        current.cancel();
+                    }
+                }
+            }, options.getWatchDogInterval(), TimeUnit.MILLISECONDS));
+        }
+        return leaseId;
+    }
+
+    private Object evalScript(String script, byte[]... params) {
+        byte[][] args = new byte[params.length + 2][];
+        args[0] = semaphoreKey;
+        args[1] = leasesKey;
+        System.arraycopy(params, 0, args, 2, params.length);
+        return scripts.eval(client, script, 2, args);
+    }
+
+    private static byte[] now() {
+        return SafeEncoder.encode(String.valueOf(System.currentTimeMillis()));
+    }
+}
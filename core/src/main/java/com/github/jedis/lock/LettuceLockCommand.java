@@ -0,0 +1,335 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.JedisLockException;
+import io.lettuce.core.*;
+import io.lettuce.core.api.StatefulConnection;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.BaseRedisAsyncCommands;
+import io.lettuce.core.api.async.RedisScriptingAsyncCommands;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisAdvancedClusterAsyncCommands;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.output.CommandOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 基于Lettuce(netty)的非阻塞LockCommand,lettuce-core为可选依赖,使用时需自行引入
+ * <p>
+ * 所有锁共享一条多路复用连接,脚本通过原生异步的evalsha执行,同步方法仅等待结果,不再受连接池大小限制;
+ * 订阅使用独立的pub/sub连接异步完成,由Lettuce负责断线重连及恢复订阅。
+ * 脚本返回值与Jedis保持一致(整数为Long,字符串为byte[],数组为List),集群模式下由Lettuce按key所在slot路由
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/4 2:30 下午
+ */
+public class LettuceLockCommand implements AsyncLockCommand {
+    private AbstractRedisClient redisClient;
+    private StatefulConnection<byte[], byte[]> connection;
+    private BaseRedisAsyncCommands<byte[], byte[]> commands;
+    private Supplier<StatefulRedisPubSubConnection<String, String>> pubSubFactory;
+    private volatile StatefulRedisPubSubConnection<String, String> pubSub;
+    private boolean cluster;
+    private volatile LockMetrics metrics = LockMetrics.NOOP;
+
+    public LettuceLockCommand(RedisClient redisClient) {
+        StatefulRedisConnection<byte[], byte[]> connection = redisClient.connect(ByteArrayCodec.INSTANCE);
+        this.redisClient = redisClient;
+        this.connection = connection;
+        this.commands = connection.async();
+        this.pubSubFactory = () -> redisClient.connectPubSub(StringCodec.UTF8);
+    }
+
+    public LettuceLockCommand(RedisClusterClient redisClusterClient) {
+        StatefulRedisClusterConnection<byte[], byte[]> connection = redisClusterClient.connect(ByteArrayCodec.INSTANCE);
+        this.redisClient = redisClusterClient;
+        this.connection = connection;
+        this.commands = connection.async();
+        this.pubSubFactory = () -> redisClusterClient.connectPubSub(StringCodec.UTF8);
+        this.cluster = true;
+    }
+
+    @Override
+    public Object eval(String script, int keyCount, String... params) {
+        return decode(eval(SafeEncoder.encode(script), keyCount, SafeEncoder.encodeMany(params)));
+    }
+
+    /**
+     * 将脚本加载到集群中的每一个主节点,而非仅加载到其中一个节点
+     *
+     * @param script
+     * @return
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public String scriptLoad(String script) {
+        byte[] bytes = SafeEncoder.encode(script);
+        if (!cluster) {
+            return await(translate(((RedisScriptingAsyncCommands<byte[], byte[]>) commands).scriptLoad(bytes)));
+        }
+        String sha = null;
+        for (CompletableFuture<String> future : ((RedisAdvancedClusterAsyncCommands<byte[], byte[]>) commands)
+                .masters().commands().scriptLoad(bytes).futures()) {
+            try {
+                sha = await(translate(future));
+            } catch (RuntimeException e) {
+                //...节点不可用时跳过,执行时回退为eval
+            }
+        }
+        return sha;
+    }
+
+    @Override
+    public Object evalsha(String script, int keyCount, String... params) {
+        return decode(evalsha(SafeEncoder.encode(script), keyCount, SafeEncoder.encodeMany(params)));
+    }
+
+    @Override
+    public Object eval(byte[] script, int keyCount, byte[]... params) {
+        return await(evalAsync(script, keyCount, params));
+    }
+
+    @Override
+    public Object evalsha(byte[] sha, int keyCount, byte[]... params) {
+        return await(evalshaAsync(sha, keyCount, params));
+    }
+
+    @Override
+    public CompletableFuture<Object> evalAsync(byte[] script, int keyCount, byte[]... params) {
+        return dispatch(CommandType.EVAL, script, keyCount, params);
+    }
+
+    @Override
+    public CompletableFuture<Object> evalshaAsync(byte[] sha, int keyCount, byte[]... params) {
+        return dispatch(CommandType.EVALSHA, sha, keyCount, params);
+    }
+
+    /**
+     * 订阅由listen/subscribeAsync异步完成,不支持阻塞式订阅
+     */
+    @Override
+    public void subscribe(Runnable callBack, JedisPubSub jedisPubSub, String... channels) {
+        throw new JedisLockException("Features not supported");
+    }
+
+    @Override
+    public void listen(BiConsumer<String, String> listener, Runnable disconnect, Runnable reconnect) {
+        StatefulRedisPubSubConnection<String, String> pubSub = pubSubFactory.get();
+        pubSub.addListener(new RedisPubSubAdapter<String, String>() {
+            @Override
+            public void message(String channel, String message) {
+                listener.accept(channel, message);
+            }
+        });
+        redisClient.addListener(new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+                if (connection == pubSub) {
+                    reconnect.run();//断线期间的消息可能已丢失
+                }
+            }
+
+            @Override
+            public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+                if (connection == pubSub) {
+                    disconnect.run();
+                }
+            }
+
+            @Override
+            public void onRedisExceptionCaught(RedisChannelHandler<?, ?> connection, Throwable cause) {
+                if (connection == pubSub || connection == LettuceLockCommand.this.connection) {
+                    metrics.onError(null, cause);//由Lettuce自动重连
+                }
+            }
+        });
+        this.pubSub = pubSub;
+    }
+
+    @Override
+    public CompletableFuture<Void> subscribeAsync(String channel) {
+        return translate(pubSub.async().subscribe(channel));
+    }
+
+    @Override
+    public CompletableFuture<Void> unsubscribeAsync(String channel) {
+        return translate(pubSub.async().unsubscribe(channel));
+    }
+
+    @Override
+    public void setMetrics(LockMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * 关闭脚本连接和订阅连接,RedisClient由调用方关闭
+     */
+    @Override
+    public void close() {
+        connection.close();
+        if (Objects.nonNull(pubSub)) {
+            pubSub.close();
+        }
+    }
+
+    private CompletableFuture<Object> dispatch(CommandType type, byte[] script, int keyCount, byte[][] params) {
+        CommandArgs<byte[], byte[]> args = new CommandArgs<>(ByteArrayCodec.INSTANCE).add(script).add(keyCount);
+        for (int i = 0; i < params.length; i++) {
+            if (i < keyCount) {
+                args.addKey(params[i]);//集群模式下按第一个key路由
+            } else {
+                args.addValue(params[i]);
+            }
+        }
+        return translate(commands.dispatch(type, new RawOutput(), args));
+    }
+
+    /**
+     * 将Lettuce的异常转换为与Jedis一致的异常类型
+     *
+     * @param stage
+     * @param <T>
+     * @return
+     */
+    private static <T> CompletableFuture<T> translate(CompletionStage<T> stage) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        stage.whenComplete((value, e) -> {
+            if (Objects.isNull(e)) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+            if (cause instanceof RedisNoScriptException) {
+                result.completeExceptionally(new JedisNoScriptException(cause.getMessage()));
+            } else if (cause instanceof RedisCommandExecutionException) {
+                result.completeExceptionally(new JedisDataException(cause.getMessage()));
+            } else {
+                result.completeExceptionally(new JedisConnectionException(cause));
+            }
+        });
+        return result;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    /**
+     * 与Jedis的String版本eval一致,将结果中的byte[]转换为String
+     *
+     * @param result
+     * @return
+     */
+    private static Object decode(Object result) {
+        if (result instanceof byte[]) {
+            return SafeEncoder.encode((byte[]) result);
+        }
+        if (result instanceof List) {
+            return ((List<?>) result).stream().map(LettuceLockCommand::decode).collect(Collectors.toList());
+        }
+        return result;
+    }
+
+    /**
+     * 按Jedis的形式保存脚本返回值:整数为Long,字符串为byte[],数组为List,nil为null
+     */
+    private static class RawOutput extends CommandOutput<byte[], byte[], Object> {
+        /**
+         * 尚未填满的数组
+         */
+        private Deque<Aggregate> stack = new ArrayDeque<>();
+
+        private RawOutput() {
+            super(ByteArrayCodec.INSTANCE, null);
+        }
+
+        @Override
+        public void set(ByteBuffer bytes) {
+            add(Objects.isNull(bytes) ? null : codec.decodeValue(bytes));
+        }
+
+        @Override
+        public void setSingle(ByteBuffer bytes) {
+            set(bytes);
+        }
+
+        @Override
+        public void set(long integer) {
+            add(integer);
+        }
+
+        @Override
+        public void multi(int count) {
+            if (count < 0) {
+                add(null);
+                return;
+            }
+            List<Object> list = new ArrayList<>(count);
+            add(list);
+            if (count > 0) {
+                stack.push(new Aggregate(list, count));
+            }
+        }
+
+        private void add(Object value) {
+            Aggregate top = stack.peek();
+            if (Objects.isNull(top)) {
+                output = value;
+                return;
+            }
+            top.list.add(value);
+            if (--top.remaining == 0) {
+                stack.pop();//父数组在加入当前数组时已计数,无需逐级检查
+            }
+        }
+    }
+
+    private static class Aggregate {
+        private List<Object> list;
+        private int remaining;
+
+        private Aggregate(List<Object> list, int remaining) {
+            this.list = list;
+            this.remaining = remaining;
+        }
+    }
+}
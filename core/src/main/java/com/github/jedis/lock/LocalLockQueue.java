@@ -0,0 +1,354 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 进程内排队器,位于分布式锁之前,同一把锁在当前JVM内同一时刻只有一个访问者(队首)与redis交互
+ * <p>
+ * 参考AQS的思路实现:owner为当前队首访问者,其余访问者按FIFO顺序挂起在本地队列中,
+ * 队首释放时直接将owner移交给下一个等待者并唤醒,因此不存在唤醒后的争抢。
+ * 由于异步方法会在工作线程中以调用方的visitorId执行,owner以visitorId而非线程标识
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/26 2:15 下午
+ */
+public class LocalLockQueue {
+    /**
+     * 排队失败(超时或无等待时间)
+     */
+    protected static final int FAILED = -1;
+    /**
+     * 成为队首,需要继续向redis获取分布式锁
+     */
+    protected static final int HEAD = 0;
+    /**
+     * 当前访问者已是队首,重入
+     */
+    protected static final int REENTRANT = 1;
+    /**
+     * 由上一个队首在redis中直接移交了锁,无需再访问redis
+     */
+    protected static final int LEASED = 2;
+    private final ReentrantLock mainLock = new ReentrantLock();
+    private final Deque<Node> waiters = new ArrayDeque<>();
+    private volatile String owner;
+    /**
+     * owner在redis中的重入次数,仅由owner修改
+     */
+    private volatile int holds;
+
+    /**
+     * 排队成为队首
+     *
+     * @param visitorId
+     * @param nanos     最长等待时间,0表示不等待,小于0表示一直等待
+     * @return
+     */
+    protected int acquire(String visitorId, long nanos) {
+        if (visitorId.equals(owner)) {
+            return REENTRANT;
+        }
+        Node node;
+        mainLock.lock();
+        try {
+            if (Objects.isNull(owner)) {
+                owner = visitorId;
+                return HEAD;
+            }
+            if (nanos == 0) {
+                return FAILED;
+            }
+            node = new Node(visitorId, Thread.currentThread(), null);
+            waiters.add(node);
+        } finally {
+            mainLock.unlock();
+        }
+        boolean timed = nanos > 0, interrupted = false;
+        long deadline = System.nanoTime() + nanos;
+        while (node.state == FAILED) {
+            if (timed) {
+                long remain = deadline - System.nanoTime();
+                if (remain <= 0L) {
+                    mainLock.lock();//lock()内部的park可能消耗掉complete的unpark,因此加锁后必须重新检查state
+                    try {
+                        if (node.state != FAILED) {
+                            break;
+                        }
+                        if (!node.claimed) {
+                            waiters.remove(node);
+                            break;
+                        }
+                    } finally {
+                        mainLock.unlock();
+                    }
+                    LockSupport.park(this);//移交进行中,等待移交结果
+                } else {
+                    LockSupport.parkNanos(this, remain);
+                }
+            } else {
+                LockSupport.park(this);
+            }
+            if (Thread.interrupted()) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return node.state;
+    }
+
+    /**
+     * 异步排队,不挂起调用线程;无法立即成为队首时加入等待队列,之后成为队首或锁已移交时回调node的signal,
+     * 由node.getState()获取结果。异步等待者没有等待时间限制
+     *
+     * @param node 由newNode创建
+     * @return 成为队首返回HEAD,重入返回REENTRANT,加入等待队列返回FAILED
+     */
+    protected int acquire(Node node) {
+        if (node.visitorId.equals(owner)) {
+            return REENTRANT;
+        }
+        mainLock.lock();
+        try {
+            if (Objects.isNull(owner)) {
+                owner = node.visitorId;
+                return HEAD;
+            }
+            waiters.add(node);
+            return FAILED;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 队首释放,将owner直接移交给下一个等待者
+     *
+     * @param visitorId
+     */
+    protected void release(String visitorId) {
+        mainLock.lock();
+        try {
+            if (visitorId.equals(owner)) {
+                handover();
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 队首最后一次释放前摘下下一个等待者,用于在redis中直接移交锁。
+     * 被摘下的等待者即使超时也会等待移交结果,调用方必须随后调用complete或unclaim
+     *
+     * @param visitorId
+     * @return 没有等待者时返回null
+     */
+    protected Node claim(String visitorId) {
+        mainLock.lock();
+        try {
+            if (!visitorId.equals(owner)) {
+                return null;
+            }
+            Node next = waiters.poll();
+            if (Objects.nonNull(next)) {
+                next.claimed = true;
+            }
+            return next;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 完成移交,state为LEASED表示redis中的锁已移交给该等待者,为HEAD表示仅移交队首
+     *
+     * @param node
+     * @param state
+     */
+    protected void complete(Node node, int state) {
+        mainLock.lock();
+        try {
+            owner = node.visitorId;
+            holds = state == LEASED ? 1 : 0;
+            node.claimed = false;
+            node.state = state;
+            node.wake();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 取消移交,等待者重新回到队首继续等待
+     *
+     * @param node
+     */
+    protected void unclaim(Node node) {
+        mainLock.lock();
+        try {
+            node.claimed = false;
+            waiters.addFirst(node);
+            node.wake();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * owner在redis中成功加锁一次
+     *
+     * @param visitorId
+     */
+    protected void hold(String visitorId) {
+        if (visitorId.equals(owner)) {
+            holds++;
+        }
+    }
+
+    /**
+     * owner在redis中成功解锁一次(未完全释放)
+     *
+     * @param visitorId
+     */
+    protected void unhold(String visitorId) {
+        if (visitorId.equals(owner) && holds > 0) {
+            holds--;
+        }
+    }
+
+    /**
+     * 当前解锁是否为owner的最后一次释放
+     *
+     * @param visitorId
+     * @return
+     */
+    protected boolean isLastHold(String visitorId) {
+        return visitorId.equals(owner) && holds == 1;
+    }
+
+    /**
+     * 无论owner是谁都强制移交,用于暴力解锁
+     */
+    protected void reset() {
+        mainLock.lock();
+        try {
+            if (Objects.nonNull(owner)) {
+                handover();
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 调用方需持有mainLock
+     */
+    private void handover() {
+        holds = 0;
+        Node next = waiters.poll();
+        if (Objects.isNull(next)) {
+            owner = null;
+            return;
+        }
+        owner = next.visitorId;
+        next.state = HEAD;
+        next.wake();
+    }
+
+    /**
+     * 返回本地等待者数量
+     *
+     * @return
+     */
+    protected int getQueueLength() {
+        mainLock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 是否空闲,即没有队首且没有等待者
+     *
+     * @return
+     */
+    protected boolean isIdle() {
+        if (Objects.nonNull(owner)) {
+            return false;
+        }
+        mainLock.lock();
+        try {
+            return Objects.isNull(owner) && waiters.isEmpty();
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 创建异步等待者,成为队首或锁已移交时回调signal;signal在调用complete/release的线程中执行,不能阻塞
+     *
+     * @param visitorId
+     * @param signal
+     * @return
+     */
+    protected static Node newNode(String visitorId, Runnable signal) {
+        return new Node(visitorId, null, Objects.requireNonNull(signal));
+    }
+
+    protected static class Node {
+        private final String visitorId;
+        private final Thread thread;
+        private final Runnable signal;
+        private volatile int state = FAILED;
+        /**
+         * 已被队首摘下,正在移交中
+         */
+        private volatile boolean claimed;
+
+        private Node(String visitorId, Thread thread, Runnable signal) {
+            this.visitorId = visitorId;
+            this.thread = thread;
+            this.signal = signal;
+        }
+
+        protected String getVisitorId() {
+            return visitorId;
+        }
+
+        protected int getState() {
+            return state;
+        }
+
+        private void wake() {
+            if (Objects.nonNull(signal)) {
+                signal.run();
+                return;
+            }
+            LockSupport.unpark(thread);
+        }
+    }
+}
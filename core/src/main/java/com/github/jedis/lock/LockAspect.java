@@ -0,0 +1,405 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.AcquireLockException;
+import com.github.jedis.exceptions.JedisLockException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.expression.Expression;
+import org.springframework.expression.common.TemplateParserContext;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 注解切面类
+ * <p>
+ * 目标方法上的注解及解析后的锁名称表达式按方法缓存,每次调用仅需一次map查找;
+ * 锁名称中包含#{...}时按SpEL模板求值,可通过#参数名、#p0或#a0引用方法入参,根对象为目标对象;
+ * 目标方法返回CompletionStage、Mono或Flux时以LockToken异步取锁,不阻塞调用线程;取锁成功后在工作线程组中执行目标方法,
+ * 不占用取锁回调所在的watchdog线程,结果完成后在完成线程中释放
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/3 6:07 下午
+ */
+@Aspect
+@Component
+public class LockAspect {
+    /**
+     * 固定租期模式下lock()每轮的最长等待时间,单位毫秒
+     */
+    private static final long LOCK_WAIT_ROUND = 60000L;
+    private static final SpelExpressionParser PARSER = new SpelExpressionParser();
+    private static final TemplateParserContext TEMPLATE = new TemplateParserContext();
+    private static final ParameterNameDiscoverer DISCOVERER = new DefaultParameterNameDiscoverer();
+    /**
+     * reactor-core为可选依赖,缺失时Mono/Flux返回值按同步方法处理
+     */
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono",
+            LockAspect.class.getClassLoader());
+    @Resource
+    private JedisLockManager jedisLockManager;
+    private Map<MethodClassKey, Metadata> metadataCache = new ConcurrentHashMap<>(32);
+    /**
+     * 异步取锁成功后执行目标方法的工作线程组,JDK21及以上版本为虚拟线程
+     */
+    private Executor workerGroup = LockExecutors.newWorkerGroup();
+
+    /**
+     * 切入点,拦截所有标记有@DistributedLock的方法
+     */
+    @Pointcut("@annotation(com.github.jedis.lock.DistributedLock)")
+    public void interceptor() {
+    }
+
+    @Around("interceptor()")
+    public Object before(ProceedingJoinPoint joinPoint) {
+        try {
+            Metadata metadata = getMetadata(joinPoint);
+            if (Objects.isNull(metadata)) {
+                return null;
+            }
+            JedisLock lock = jedisLockManager.getLock(metadata.getName(joinPoint));
+            switch (metadata.mode) {
+                case FUTURE:
+                    return proceedAsync(joinPoint, lock, metadata.annotation);
+                case MONO:
+                case FLUX:
+                    return Reactive.proceed(this, joinPoint, lock, metadata);
+            }
+            acquire(lock, metadata.annotation);
+            try {
+                return joinPoint.proceed(joinPoint.getArgs());//执行目标方法
+            } finally {
+                lock.unlock();//取锁成功后无论如何都要释放
+            }
+        } catch (Throwable e) {
+            throw e instanceof AcquireLockException ? new JedisLockException("Try again", e)
+                    : new RuntimeException(e);//所有异常抛出
+        }
+    }
+
+    /**
+     * 按注解参数取锁,TRY_LOCK方式取锁失败时抛出AcquireLockException
+     *
+     * @param lock
+     * @param annotation
+     */
+    private void acquire(JedisLock lock, DistributedLock annotation) {
+        long leaseTime = annotation.leaseTime();
+        TimeUnit unit = annotation.unit();
+        switch (annotation.type()) {
+            case LOCK:
+                if (leaseTime < 1) {
+                    lock.lock();
+                    return;
+                }
+                long lease = unit.toMillis(leaseTime);
+                while (!lock.tryLock(LOCK_WAIT_ROUND, lease, TimeUnit.MILLISECONDS)) {
+                    //...继续等待
+                }
+                return;
+            case TRY_LOCK:
+                long time = annotation.time();
+                boolean result;
+                if (leaseTime > 0) {
+                    result = lock.tryLock(Math.max(time, 0L), leaseTime, unit);
+                } else {
+                    result = time < 1 ? lock.tryLock() : lock.tryLock(time, unit);
+                }
+                if (!result) {
+                    throw new AcquireLockException("Unable to acquire distributed lock");
+                }
+        }
+    }
+
+    /**
+     * 异步取锁后在工作线程组中执行返回CompletionStage的目标方法,其结果完成后释放;取消返回的future时放弃取锁
+     *
+     * @param joinPoint
+     * @param lock
+     * @param annotation
+     * @return
+     */
+    private CompletableFuture<Object> proceedAsync(ProceedingJoinPoint joinPoint, JedisLock lock,
+                                                   DistributedLock annotation) {
+        LockToken token = new LockToken(lock);
+        CompletableFuture<Void> acquired = acquireAsync(token, annotation);
+        CompletableFuture<Object> result = acquired.thenComposeAsync(v -> {
+            CompletionStage<Object> stage;
+            try {
+                stage = invoke(joinPoint);
+            } catch (Throwable e) {
+                token.unlockAsync();
+                throw new CompletionException(e);
+            }
+            return stage.whenComplete((value, e) -> token.unlockAsync());//在完成线程中释放
+        }, workerGroup);
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                acquired.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 执行返回CompletionStage的目标方法,返回null时视为以null完成
+     *
+     * @param joinPoint
+     * @return
+     * @throws Throwable
+     */
+    @SuppressWarnings("unchecked")
+    private CompletionStage<Object> invoke(ProceedingJoinPoint joinPoint) throws Throwable {
+        CompletionStage<Object> stage = (CompletionStage<Object>) joinPoint.proceed(joinPoint.getArgs());
+        return Objects.nonNull(stage) ? stage : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 按注解参数以LockToken异步取锁,TRY_LOCK方式取锁失败时以JedisLockException完成
+     *
+     * @param token
+     * @param annotation
+     * @return
+     */
+    private CompletableFuture<Void> acquireAsync(LockToken token, DistributedLock annotation) {
+        long leaseTime = annotation.leaseTime();
+        TimeUnit unit = annotation.unit();
+        if (annotation.type() == DistributedLock.LockType.LOCK) {
+            return leaseTime < 1 ? token.lockAsync() : lockAsync(token, unit.toMillis(leaseTime));
+        }
+        long time = annotation.time();
+        CompletableFuture<Boolean> future = token.tryLockAsync(time < 1 ? -1L : time,
+                leaseTime < 1 ? -1L : leaseTime, unit);
+        CompletableFuture<Void> result = future.thenApply(acquired -> {
+            if (!acquired) {
+                throw new JedisLockException("Try again",
+                        new AcquireLockException("Unable to acquire distributed lock"));
+            }
+            return null;
+        });
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                future.cancel(false);//取锁请求仍然成功时由LockToken释放
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 固定租期模式下的异步lock,每轮最长等待LOCK_WAIT_ROUND,失败时在回调中继续下一轮
+     *
+     * @param token
+     * @param lease 单位毫秒
+     * @return
+     */
+    private CompletableFuture<Void> lockAsync(LockToken token, long lease) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<Boolean>> round = new AtomicReference<>();
+        result.whenComplete((value, e) -> {
+            CompletableFuture<Boolean> current = round.get();
+            if (result.isCancelled() && Objects.nonNull(current)) {
+                current.cancel(false);
+            }
+        });
+        lockAsync(token, lease, result, round);
+        return result;
+    }
+
+    /**
+     * @param token
+     * @param lease
+     * @param result
+     * @param round  当前一轮的取锁请求,调用方取消时由result的回调取消
+     */
+    private void lockAsync(LockToken token, long lease, CompletableFuture<Void> result,
+                           AtomicReference<CompletableFuture<Boolean>> round) {
+        CompletableFuture<Boolean> future = token.tryLockAsync(LOCK_WAIT_ROUND, lease, TimeUnit.MILLISECONDS);
+        round.set(future);
+        if (result.isCancelled()) {
+            future.cancel(false);//设置之前已被取消
+            return;
+        }
+        future.whenComplete((acquired, e) -> {
+            if (Objects.nonNull(e)) {
+                result.completeExceptionally(e);
+            } else if (acquired) {
+                result.complete(null);
+            } else if (!result.isDone()) {
+                lockAsync(token, lease, result, round);//...继续等待
+            }
+        });
+    }
+
+    /**
+     * 获取目标方法的注解及锁名称表达式,首次调用时解析并缓存;接口或父类上的方法解析为目标类中的实现方法
+     *
+     * @param joinPoint
+     * @return 目标方法上没有注解时返回null
+     */
+    private Metadata getMetadata(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Class<?> targetClass = AopUtils.getTargetClass(joinPoint.getTarget());
+        MethodClassKey key = new MethodClassKey(method, targetClass);
+        Metadata metadata = metadataCache.get(key);
+        if (Objects.nonNull(metadata)) {
+            return metadata == Metadata.NONE ? null : metadata;
+        }
+        metadata = metadataCache.computeIfAbsent(key, k -> {
+            Method target = AopUtils.getMostSpecificMethod(method, targetClass);
+            DistributedLock annotation = AnnotatedElementUtils.findMergedAnnotation(target, DistributedLock.class);
+            return Objects.isNull(annotation) ? Metadata.NONE : new Metadata(target, annotation);
+        });
+        return metadata == Metadata.NONE ? null : metadata;
+    }
+
+    /**
+     * 目标方法的执行方式,按返回值类型确定
+     */
+    private enum Mode {
+        /**
+         * 同步取锁,方法返回后释放
+         */
+        SYNC,
+        /**
+         * 返回CompletionStage
+         */
+        FUTURE,
+        /**
+         * 返回Mono
+         */
+        MONO,
+        /**
+         * 返回Flux
+         */
+        FLUX
+    }
+
+    /**
+     * 目标方法的注解及解析后的锁名称,锁名称不包含#{...}时不进行SpEL求值
+     */
+    private static class Metadata {
+        private static final Metadata NONE = new Metadata(null, null);
+        private Method method;
+        private DistributedLock annotation;
+        private Expression expression;
+        private Mode mode = Mode.SYNC;
+
+        private Metadata(Method method, DistributedLock annotation) {
+            this.method = method;
+            this.annotation = annotation;
+            if (Objects.nonNull(method)) {
+                Class<?> type = method.getReturnType();
+                if (CompletionStage.class.isAssignableFrom(type)) {
+                    this.mode = Mode.FUTURE;
+                } else if (REACTOR_PRESENT) {
+                    this.mode = Reactive.getMode(type);
+                }
+            }
+            if (Objects.nonNull(annotation) && annotation.name().contains(TEMPLATE.getExpressionPrefix())) {
+                this.expression = PARSER.parseExpression(annotation.name(), TEMPLATE);
+            }
+        }
+
+        private String getName(ProceedingJoinPoint joinPoint) {
+            if (Objects.isNull(expression)) {
+                return annotation.name();
+            }
+            String name = expression.getValue(new MethodBasedEvaluationContext(joinPoint.getTarget(), method,
+                    joinPoint.getArgs(), DISCOVERER), String.class);
+            if (Objects.isNull(name) || name.isEmpty()) {
+                throw new JedisLockException(String.format("Lock name expression '%s' evaluated to empty",
+                        annotation.name()));
+            }
+            return name;
+        }
+    }
+
+    /**
+     * Mono/Flux返回值的处理,仅在reactor-core存在时加载;订阅时异步取锁,取锁成功后切换到工作线程组执行目标方法,
+     * 终止或取消时释放
+     */
+    private static class Reactive {
+        private static Mode getMode(Class<?> type) {
+            if (Mono.class.isAssignableFrom(type)) {
+                return Mode.MONO;
+            }
+            return Flux.class.isAssignableFrom(type) ? Mode.FLUX : Mode.SYNC;
+        }
+
+        private static Object proceed(LockAspect aspect, ProceedingJoinPoint joinPoint, JedisLock lock,
+                                      Metadata metadata) {
+            Mono<LockToken> acquire = Mono.defer(() -> {
+                LockToken token = new LockToken(lock);
+                CompletableFuture<Void> future = aspect.acquireAsync(token, metadata.annotation);
+                return Mono.fromFuture(future).doOnCancel(() -> future.cancel(false)).thenReturn(token);
+            }).publishOn(Schedulers.fromExecutor(aspect.workerGroup));
+            if (metadata.mode == Mode.MONO) {
+                return Mono.usingWhen(acquire, token -> {
+                    Mono<?> result = (Mono<?>) invoke(joinPoint);
+                    return Objects.nonNull(result) ? result : Mono.empty();
+                }, token -> Mono.fromFuture(token.unlockAsync()));
+            }
+            return Flux.usingWhen(acquire, token -> {
+                Flux<?> result = (Flux<?>) invoke(joinPoint);
+                return Objects.nonNull(result) ? result : Flux.empty();
+            }, token -> Mono.fromFuture(token.unlockAsync()));
+        }
+
+        /**
+         * 执行目标方法,受检异常包装为RuntimeException后由usingWhen转为错误信号
+         *
+         * @param joinPoint
+         * @return
+         */
+        private static Object invoke(ProceedingJoinPoint joinPoint) {
+            try {
+                return joinPoint.proceed(joinPoint.getArgs());
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -31,5 +31,24 @@ public interface LockCommand {
 
     Object evalsha(String script, int keyCount, String... params);
 
+    Object eval(byte[] script, int keyCount, byte[]... params);
+
+    Object evalsha(byte[] sha, int keyCount, byte[]... params);
+
     void subscribe(Runnable callBack, JedisPubSub jedisPubSub, String... channels);
+
+    /**
+     * 设置指标采集器,由JedisLockManager#setMetrics统一设置,用于上报被屏蔽的连接异常
+     *
+     * @param metrics
+     */
+    default void setMetrics(LockMetrics metrics) {
+    }
+
+    /**
+     * 释放LockCommand自身创建的连接等资源,由创建LockCommand的一方调用,JedisLockManager#shutdown仅关闭其自身创建的LockCommand;
+     * 调用方传入的连接池、JedisCluster及RedisClient仍由调用方关闭
+     */
+    default void close() {
+    }
 }
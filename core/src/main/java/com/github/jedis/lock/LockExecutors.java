@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 执行阻塞路径的线程工厂,包括异步方法的工作线程组以及订阅循环线程
+ * <p>
+ * 当前为平台线程实现;多版本jar中META-INF/versions/21下的同名类在JDK21及以上版本运行时替换本类,改为虚拟线程
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/4 10:30 上午
+ */
+public class LockExecutors {
+    private LockExecutors() {
+    }
+
+    /**
+     * 创建工作线程组，可回收缓存线程池，空闲线程(含核心线程)允许进行回收，没有异步调用时不占用线程
+     *
+     * @return
+     */
+    public static ExecutorService newWorkerGroup() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(10, 500, 2000, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(2000),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 创建异步线程组,执行异步取锁的重试及回调;队列无界,线程数为CPU核数的2倍,空闲线程允许回收
+     *
+     * @return
+     */
+    public static ExecutorService newAsyncGroup() {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() << 1);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 2000, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> newThread("jedis-lock-async", r));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 创建未启动的后台线程,用于订阅循环等长时间阻塞的任务
+     *
+     * @param name
+     * @param task
+     * @return
+     */
+    public static Thread newThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * 是否使用虚拟线程
+     *
+     * @return
+     */
+    public static boolean isVirtual() {
+        return false;
+    }
+}
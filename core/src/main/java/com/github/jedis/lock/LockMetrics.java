@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+/**
+ * 锁指标采集SPI,缺省不做任何处理,通过JedisLockManager#setMetrics注入
+ * <p>
+ * 回调在取锁/解锁线程、watchdog线程或订阅线程中同步执行,实现类必须线程安全且不能阻塞;
+ * 耗时单位均为纳秒,name为锁名称,与连接相关的事件没有锁名称时为null
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/7 10:20 上午
+ */
+public interface LockMetrics {
+    LockMetrics NOOP = new LockMetrics() {
+    };
+
+    /**
+     * 取锁结束,nanos为从发起取锁到成功或放弃的总耗时
+     *
+     * @param name
+     * @param nanos
+     * @param acquired
+     */
+    default void onAcquire(String name, long nanos, boolean acquired) {
+    }
+
+    /**
+     * 首次取锁失败(锁由其他JVM持有)后等待锁释放的耗时,无需等待时不回调;
+     * 同一JVM内的本地排队耗时仅计入onAcquire,二者对比可以区分竞争来自本地还是其他JVM
+     *
+     * @param name
+     * @param nanos
+     */
+    default void onWait(String name, long nanos) {
+    }
+
+    /**
+     * 等待期间被唤醒或ttl到期后的一次重试
+     *
+     * @param name
+     */
+    default void onRetry(String name) {
+    }
+
+    /**
+     * 完全解锁,nanos为持有时长,重入不重复计算
+     *
+     * @param name
+     * @param nanos
+     */
+    default void onRelease(String name, long nanos) {
+    }
+
+    /**
+     * watchdog续期结束
+     *
+     * @param name
+     * @param success
+     */
+    default void onRenew(String name, boolean success) {
+    }
+
+    /**
+     * 合并锁(红锁)取锁结束,各个子锁的取锁另行回调onAcquire
+     *
+     * @param name
+     * @param nanos
+     * @param acquired
+     */
+    default void onMultiAcquire(String name, long nanos, boolean acquired) {
+    }
+
+    /**
+     * evalsha返回NOSCRIPT,回退为eval执行
+     */
+    default void onNoScript() {
+    }
+
+    /**
+     * 订阅连接断开
+     */
+    default void onDisconnect() {
+    }
+
+    /**
+     * 订阅连接断开后重连成功
+     */
+    default void onReconnect() {
+    }
+
+    /**
+     * 被屏蔽或自动恢复的异常,例如jedis串消息、订阅连接异常、脚本预加载失败等
+     *
+     * @param name
+     * @param e
+     */
+    default void onError(String name, Throwable e) {
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁参数,创建后不可修改
+ * <p>
+ * 缺省为watchdog模式:锁的过期时间为30秒,持有期间每隔1/3过期时间由watchdog续期一次;
+ * 指定leaseTime后为固定租期模式:锁在租期结束后自动失效,不再注册watchdog,适用于耗时很短的临界区
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/29 11:05 上午
+ */
+public class LockOptions {
+    private static final LockOptions DEFAULT = builder().build();
+    private final long leaseTime;
+    private final boolean watchDog;
+    private final boolean localHandoff;
+    private final LockMetrics metrics;
+
+    private LockOptions(Builder builder) {
+        this.leaseTime = builder.leaseTime;
+        this.watchDog = builder.watchDog;
+        this.localHandoff = builder.localHandoff;
+        this.metrics = builder.metrics;
+    }
+
+    public static LockOptions defaults() {
+        return DEFAULT;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.leaseTime = leaseTime;
+        builder.watchDog = watchDog;
+        builder.localHandoff = localHandoff;
+        builder.metrics = metrics;
+        return builder;
+    }
+
+    /**
+     * 锁的过期时间,单位毫秒
+     *
+     * @return
+     */
+    public long getLeaseTime() {
+        return leaseTime;
+    }
+
+    /**
+     * 是否由watchdog自动续期
+     *
+     * @return
+     */
+    public boolean isWatchDog() {
+        return watchDog;
+    }
+
+    /**
+     * watchdog续期间隔,单位毫秒,为过期时间的1/3
+     *
+     * @return
+     */
+    public long getWatchDogInterval() {
+        return Math.max(leaseTime / 3, 1L);
+    }
+
+    public boolean isLocalHandoff() {
+        return localHandoff;
+    }
+
+    /**
+     * 指标采集器,缺省不采集
+     *
+     * @return
+     */
+    public LockMetrics getMetrics() {
+        return metrics;
+    }
+
+    public static class Builder {
+        private long leaseTime = Constants.DEFAULT_KEY_TTL;
+        private boolean watchDog = true;
+        private boolean localHandoff;
+        private LockMetrics metrics = LockMetrics.NOOP;
+
+        private Builder() {
+        }
+
+        /**
+         * 固定租期,锁在租期结束后自动失效,不注册watchdog
+         *
+         * @param leaseTime
+         * @param unit
+         * @return
+         */
+        public Builder leaseTime(long leaseTime, TimeUnit unit) {
+            this.leaseTime = toMillis(leaseTime, unit);
+            this.watchDog = false;
+            return this;
+        }
+
+        /**
+         * watchdog模式下锁的过期时间,持有期间每隔1/3过期时间续期一次
+         *
+         * @param timeout
+         * @param unit
+         * @return
+         */
+        public Builder watchDogTimeout(long timeout, TimeUnit unit) {
+            this.leaseTime = toMillis(timeout, unit);
+            this.watchDog = true;
+            return this;
+        }
+
+        /**
+         * 本地移交模式,完全解锁时如果本地存在等待者,则在redis中直接将锁移交给下一个本地等待者
+         *
+         * @param localHandoff
+         * @return
+         */
+        public Builder localHandoff(boolean localHandoff) {
+            this.localHandoff = localHandoff;
+            return this;
+        }
+
+        /**
+         * 指标采集器,通常由JedisLockManager#setMetrics统一设置
+         *
+         * @param metrics
+         * @return
+         */
+        public Builder metrics(LockMetrics metrics) {
+            this.metrics = Objects.requireNonNull(metrics);
+            return this;
+        }
+
+        public LockOptions build() {
+            return new LockOptions(this);
+        }
+
+        private static long toMillis(long time, TimeUnit unit) {
+            Objects.requireNonNull(unit);
+            if (time <= 0) {
+                throw new IllegalArgumentException("Parameter time must be > 0");
+            }
+            return unit.toMillis(time);
+        }
+    }
+}
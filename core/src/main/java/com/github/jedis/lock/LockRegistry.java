@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 按名称缓存锁实例,查找无锁;支持数量上限及空闲超时淘汰
+ * <p>
+ * 只有没有任何线程持有或等待的锁才会被淘汰,空闲的锁不占用订阅通道和watchdog租约,淘汰即从缓存中移除。
+ * 超过上限时按最近访问时间淘汰空闲的锁,一次淘汰至上限的90%以摊薄扫描开销;没有可淘汰的锁时允许暂时超出上限。
+ * 被淘汰的锁仅保留弱引用,仍被引用时(例如刚由get返回、正在持有或等待)再次get会复用该实例,
+ * 因此淘汰与get之间的竞争不会产生同名的两个实例,线程绑定的访问者不会因此失去重入性
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/10 10:15 上午
+ */
+public class LockRegistry<T> {
+    /**
+     * 访问时间的更新粒度,避免热点锁上每次查找都写volatile变量
+     */
+    private static final long TOUCH_GRANULARITY = TimeUnit.MILLISECONDS.toNanos(10);
+    private final Map<String, Entry<T>> entries = new ConcurrentHashMap<>(32);
+    /**
+     * 已淘汰的锁,仍被引用时由get复用,被回收后在下次淘汰或创建时清理
+     */
+    private final Map<String, Retired<T>> retired = new ConcurrentHashMap<>();
+    private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+    private final Predicate<T> idle;
+    /**
+     * 保证同一时刻只有一个线程执行淘汰扫描
+     */
+    private final ReentrantLock evictLock = new ReentrantLock();
+    private volatile int maxSize = Integer.MAX_VALUE;
+
+    protected LockRegistry(Predicate<T> idle) {
+        this.idle = Objects.requireNonNull(idle);
+    }
+
+    /**
+     * 获取目标锁,不存在时优先复用仍被引用的已淘汰实例,否则由factory创建;创建后超过上限时触发淘汰
+     *
+     * @param name
+     * @param factory
+     * @return
+     */
+    protected T get(String name, Function<String, T> factory) {
+        Entry<T> entry = entries.get(name);
+        if (Objects.isNull(entry)) {
+            purge();
+            entry = entries.computeIfAbsent(name, key -> {
+                Retired<T> reference = retired.remove(key);
+                T value = Objects.nonNull(reference) ? reference.get() : null;
+                return new Entry<>(Objects.nonNull(value) ? value : factory.apply(key));
+            });
+            if (entries.size() > maxSize) {
+                evict(entry);
+            }
+        }
+        entry.touch();
+        return entry.value;
+    }
+
+    /**
+     * 设置缓存数量上限,超过上限时淘汰空闲的锁
+     *
+     * @param maxSize
+     */
+    protected void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Parameter maxSize must be > 0");
+        }
+        this.maxSize = maxSize;
+        if (entries.size() > maxSize) {
+            evict(null);
+        }
+    }
+
+    /**
+     * 淘汰超过指定时间未被访问且空闲的锁,由JedisLockManager定时回调
+     *
+     * @param timeout
+     * @param unit
+     */
+    protected void evictIdle(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() - unit.toNanos(timeout);
+        purge();
+        entries.forEach((name, entry) -> {
+            if (entry.lastAccess - deadline < 0) {
+                retire(name, entry);
+            }
+        });
+    }
+
+    /**
+     * 返回当前缓存的锁名称
+     *
+     * @return
+     */
+    protected Set<String> names() {
+        return entries.keySet();
+    }
+
+    protected int size() {
+        return entries.size();
+    }
+
+    /**
+     * 按最近访问时间从旧到新淘汰空闲的锁,直至数量降到上限的90%
+     *
+     * @param current 刚创建的锁,不参与淘汰
+     */
+    private void evict(Entry<T> current) {
+        if (!evictLock.tryLock()) {
+            return;//其他线程正在淘汰
+        }
+        try {
+            int target = maxSize - maxSize / 10;
+            if (entries.size() <= target) {
+                return;
+            }
+            List<Candidate<T>> candidates = new ArrayList<>(entries.size());
+            entries.forEach((name, entry) -> {
+                if (entry != current) {
+                    candidates.add(new Candidate<>(name, entry));
+                }
+            });
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+            for (Candidate<T> candidate : candidates) {
+                if (entries.size() <= target) {
+                    break;
+                }
+                retire(candidate.name, candidate.entry);
+            }
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    /**
+     * 空闲时将目标锁从缓存中移除并保留弱引用;与同名的get互斥,避免get在移除之后、登记弱引用之前创建新实例
+     *
+     * @param name
+     * @param entry
+     */
+    private void retire(String name, Entry<T> entry) {
+        entries.computeIfPresent(name, (key, current) -> {
+            if (current != entry || !idle.test(current.value)) {
+                return current;
+            }
+            retired.put(key, new Retired<>(key, current.value, queue));
+            return null;
+        });
+    }
+
+    /**
+     * 清理已被回收的淘汰实例
+     */
+    @SuppressWarnings("unchecked")
+    private void purge() {
+        Retired<T> reference;
+        while (Objects.nonNull(reference = (Retired<T>) queue.poll())) {
+            retired.remove(reference.name, reference);
+        }
+    }
+
+    /**
+     * 判断锁是否空闲,即没有任何线程持有或等待;无法判断的自定义实现视为非空闲,不会被淘汰
+     *
+     * @param lock
+     * @return
+     */
+    protected static boolean isIdle(JedisLock lock) {
+        if (lock instanceof JedisReentrantLock) {
+            return ((JedisReentrantLock) lock).isIdle();
+        }
+        if (lock instanceof JedisMultiLock) {
+            return ((JedisMultiLock) lock).isIdle();
+        }
+        return false;
+    }
+
+    /**
+     * 淘汰候选,排序期间访问时间可能被更新,因此使用快照
+     */
+    private static class Candidate<T> {
+        private final String name;
+        private final Entry<T> entry;
+        private final long lastAccess;
+
+        private Candidate(String name, Entry<T> entry) {
+            this.name = name;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+
+    private static class Retired<T> extends WeakReference<T> {
+        private final String name;
+
+        private Retired(String name, T value, ReferenceQueue<T> queue) {
+            super(value, queue);
+            this.name = name;
+        }
+    }
+
+    private static class Entry<T> {
+        private final T value;
+        private volatile long lastAccess = System.nanoTime();
+
+        private Entry(T value) {
+            this.value = value;
+        }
+
+        private void touch() {
+            long now = System.nanoTime();
+            if (now - lastAccess > TOUCH_GRANULARITY) {
+                lastAccess = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 显式的锁持有者,取代线程绑定的访问者,取锁和解锁可以在不同线程中完成
+ * <p>
+ * 每个LockToken对应一次独立的持有,同一线程中的多个LockToken之间不可重入;
+ * 用于异步方法的调用链,避免共享同一事件循环线程的多个请求因线程绑定的访问者而误判为重入
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/11 2:40 下午
+ */
+public class LockToken {
+    private final JedisLock lock;
+    /**
+     * 重入锁上绑定的访问者,合并锁以LockToken自身作为持有者
+     */
+    private final LockVisitor visitor;
+
+    protected LockToken(JedisLock lock) {
+        this.lock = Objects.requireNonNull(lock);
+        this.visitor = lock instanceof JedisReentrantLock ? ((JedisReentrantLock) lock).newVisitor() : null;
+    }
+
+    /**
+     * 异步取锁,取消返回的future后取锁成功的由回调线程释放
+     *
+     * @return
+     */
+    protected CompletableFuture<Void> lockAsync() {
+        CompletableFuture<Void> future;
+        if (Objects.nonNull(visitor)) {
+            return cancellable(((JedisReentrantLock) lock).lockAsync(visitor), true, result -> true);
+        }
+        if (lock instanceof JedisMultiLock) {
+            future = ((JedisMultiLock) lock).lockAsync(this);
+        } else {
+            future = lock.lockAsync();//无法绑定持有者,使用调用线程
+        }
+        return cancellable(future, false, result -> true);
+    }
+
+    /**
+     * 异步尝试取锁
+     *
+     * @param waitTime  小于0时表示不等待
+     * @param leaseTime 固定租期,小于0时由watchdog续期
+     * @param unit
+     * @return
+     */
+    protected CompletableFuture<Boolean> tryLockAsync(long waitTime, long leaseTime, TimeUnit unit) {
+        CompletableFuture<Boolean> future;
+        if (Objects.nonNull(visitor)) {
+            //由解锁消息驱动的限时等待或单次非阻塞尝试,取消后放弃等待并自行释放
+            return cancellable(((JedisReentrantLock) lock).lockAsync(visitor, Math.max(waitTime, 0L), leaseTime,
+                    unit), true, Boolean.TRUE::equals);
+        }
+        if (lock instanceof JedisMultiLock) {
+            future = ((JedisMultiLock) lock).tryLockAsync(this, waitTime < 0 ? -1L : waitTime,
+                    leaseTime < 0 ? -1L : leaseTime, unit);
+        } else if (leaseTime < 0) {
+            future = waitTime < 0 ? lock.tryLockAsync() : lock.tryLockAsync(waitTime, unit);
+        } else {
+            future = lock.tryLockAsync(Math.max(waitTime, 0L), leaseTime, unit);
+        }
+        return cancellable(future, false, Boolean.TRUE::equals);
+    }
+
+    /**
+     * 异步解锁,可以在任意线程中调用
+     *
+     * @return
+     */
+    protected CompletableFuture<Void> unlockAsync() {
+        if (Objects.nonNull(visitor)) {
+            return ((JedisReentrantLock) lock).unlockAsync(visitor);
+        }
+        if (lock instanceof JedisMultiLock) {
+            return ((JedisMultiLock) lock).unlockAsync(this);
+        }
+        return lock.unlockAsync();
+    }
+
+    /**
+     * 返回可取消的取锁结果,调用方取消后取锁请求仍然成功时立即释放,避免锁一直被持有至过期
+     *
+     * @param future
+     * @param propagate 是否取消取锁请求,仅事件驱动的取锁请求在取消后放弃等待并自行释放,其余请求需要等待其完成
+     * @param acquired  判断取锁结果是否为成功
+     * @param <T>
+     * @return
+     */
+    private <T> CompletableFuture<T> cancellable(CompletableFuture<T> future, boolean propagate,
+                                                 Predicate<T> acquired) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, e) -> {
+            if (Objects.nonNull(e)) {
+                result.completeExceptionally(e);
+            } else if (!result.complete(value) && acquired.test(value)) {
+                unlockAsync();
+            }
+        });
+        result.whenComplete((value, e) -> {
+            if (propagate && result.isCancelled()) {
+                future.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 返回LockToken所属的锁
+     *
+     * @return
+     */
+    protected JedisLock getLock() {
+        return lock;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.nonNull(visitor) ? visitor.toString() : super.toString();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import redis.clients.util.SafeEncoder;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 锁访问者,每个线程在每把锁上对应一个访问者
+ * <p>
+ * 访问者标识由进程级uuid前缀+自增序号组成,创建时即完成编码并缓存脚本参数,
+ * 取锁/解锁/续期时直接复用,无需重复编码和分配参数数组。参数数组创建后不再修改,异步方法可安全共享
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/28 3:20 下午
+ */
+public class LockVisitor {
+    private static final String PREFIX = UUID.randomUUID().toString();
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private final String id;
+    private final byte[] idBytes;
+    /**
+     * KEYS[1]:锁名称,ARGV[1]:访问者标识,ARGV[2]:过期时间
+     */
+    private final byte[][] args;
+
+    protected LockVisitor(byte[] name, byte[] ttl) {
+        this.id = PREFIX + ':' + SEQUENCE.incrementAndGet();
+        this.idBytes = SafeEncoder.encode(id);
+        this.args = new byte[][]{name, idBytes, ttl};
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    protected byte[] getIdBytes() {
+        return idBytes;
+    }
+
+    protected byte[][] getArgs() {
+        return args;
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
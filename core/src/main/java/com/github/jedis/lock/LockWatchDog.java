@@ -0,0 +1,286 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 全局watchdog,由JedisLockManager持有,所有锁的续期任务共享同一个时间轮
+ * <p>
+ * 时间轮由单个tick线程驱动,添加/取消租约均为O(1),到期的续期任务交由固定大小的线程池执行,
+ * 因此持有的租约数量与线程数量无关。一次性定时任务以及异步取锁的重试在独立的异步线程组中执行,
+ * 阻塞的脚本调用不会占用续期线程而导致持有中的锁过期
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/24 3:12 下午
+ */
+public class LockWatchDog {
+    /**
+     * 缺省tick间隔为100毫秒
+     */
+    private static final long DEFAULT_TICK_DURATION = 100L;
+    /**
+     * 缺省时间轮槽位数,必须为2的幂
+     */
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+    private final long tickNanos;
+    private final int mask;
+    private final Queue<Lease>[] wheel;
+    /**
+     * 新增或等待重新入轮的租约,由tick线程统一搬运至时间轮
+     */
+    private final Queue<Lease> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger leaseCount = new AtomicInteger();
+    private final long startTime = System.nanoTime();
+    private final Thread worker;
+    /**
+     * 续期线程组,仅执行到期的周期性续期任务
+     */
+    private final ExecutorService renewGroup;
+    /**
+     * 异步线程组,执行一次性定时任务以及异步取锁的重试和回调
+     */
+    private final ExecutorService asyncGroup;
+    /**
+     * 工作线程组,执行unlockAsync等阻塞方法的异步调用,由同一manager内的所有锁共享
+     */
+    private final ExecutorService workerGroup;
+    private volatile boolean stopped;
+
+    protected LockWatchDog() {
+        this(DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE, 4);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected LockWatchDog(long tickDuration, TimeUnit unit, int wheelSize, int renewThreads) {
+        Objects.requireNonNull(unit);
+        if (tickDuration < 1 || wheelSize < 1 || (wheelSize & (wheelSize - 1)) != 0) {
+            throw new IllegalArgumentException("Parameter tickDuration must be > 0 and wheelSize must be a power of 2");
+        }
+        tickNanos = unit.toNanos(tickDuration);
+        mask = wheelSize - 1;
+        wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        renewGroup = Executors.newFixedThreadPool(renewThreads, r -> {
+            Thread thread = new Thread(r, "jedis-lock-watchdog-renew");
+            thread.setDaemon(true);
+            return thread;
+        });
+        asyncGroup = LockExecutors.newAsyncGroup();
+        workerGroup = LockExecutors.newWorkerGroup();
+        worker = new Thread(this::run, "jedis-lock-watchdog");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 添加一个周期性续期任务,首次执行时间为period之后
+     *
+     * @param task
+     * @param period
+     * @param unit
+     * @return
+     */
+    public Lease schedule(Runnable task, long period, TimeUnit unit) {
+        Objects.requireNonNull(task);
+        Objects.requireNonNull(unit);
+        if (period < 1) {
+            throw new IllegalArgumentException("Parameter period must be > 0");
+        }
+        Lease lease = new Lease(task, unit.toNanos(period), true);
+        leaseCount.incrementAndGet();
+        pending.add(lease);
+        return lease;
+    }
+
+    /**
+     * 添加一个一次性定时任务,delay之后在异步线程组中执行一次,用于异步取锁等待锁ttl到期
+     *
+     * @param task
+     * @param delay
+     * @param unit
+     * @return
+     */
+    public Lease scheduleOnce(Runnable task, long delay, TimeUnit unit) {
+        Objects.requireNonNull(task);
+        Objects.requireNonNull(unit);
+        Lease lease = new Lease(task, unit.toNanos(Math.max(delay, 1L)), false);
+        leaseCount.incrementAndGet();
+        pending.add(lease);
+        return lease;
+    }
+
+    /**
+     * 在异步线程组中执行任务,用于异步取锁被唤醒后的重试
+     *
+     * @param task
+     */
+    protected void execute(Runnable task) {
+        asyncGroup.execute(task);
+    }
+
+    /**
+     * 返回工作线程组
+     *
+     * @return
+     */
+    protected Executor getWorkerGroup() {
+        return workerGroup;
+    }
+
+    /**
+     * 返回当前存活的租约数量
+     *
+     * @return
+     */
+    public int getLeaseCount() {
+        return leaseCount.get();
+    }
+
+    /**
+     * 停止时间轮,所有租约不再续期
+     */
+    public void shutdown() {
+        stopped = true;
+        worker.interrupt();
+        renewGroup.shutdownNow();
+        asyncGroup.shutdownNow();
+        workerGroup.shutdown();//已提交的异步解锁继续执行
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!stopped) {
+            long sleepNanos = startTime + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    continue;//shutdown时退出
+                }
+            }
+            transferPending(tick);
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    /**
+     * 将待入轮的租约按到期时间放入对应槽位
+     *
+     * @param tick
+     */
+    private void transferPending(long tick) {
+        Lease lease;
+        while (Objects.nonNull(lease = pending.poll())) {
+            if (lease.cancelled.get()) {
+                continue;
+            }
+            long ticks = Math.max((lease.deadline - startTime) / tickNanos, tick);
+            lease.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(lease);
+        }
+    }
+
+    /**
+     * 处理当前槽位,已取消的租约直接丢弃,到期的续期租约提交至续期线程组,一次性任务提交至异步线程组
+     *
+     * @param bucket
+     */
+    private void expire(Queue<Lease> bucket) {
+        for (int i = bucket.size(); i > 0; i--) {
+            Lease lease = bucket.poll();
+            if (lease.cancelled.get()) {
+                continue;
+            }
+            if (lease.remainingRounds > 0) {
+                lease.remainingRounds--;
+                bucket.add(lease);
+                continue;
+            }
+            try {
+                (lease.periodic ? renewGroup : asyncGroup).execute(lease);
+            } catch (RejectedExecutionException e) {
+                //shutdown时忽略
+            }
+        }
+    }
+
+    /**
+     * 续期租约,续期完成后按周期重新入轮,避免同一租约并发续期
+     */
+    public class Lease implements Runnable {
+        private final Runnable task;
+        private final long periodNanos;
+        /**
+         * 是否为周期任务,一次性任务执行后自动取消
+         */
+        private final boolean periodic;
+        private volatile long deadline;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        /**
+         * 仅由tick线程访问
+         */
+        private long remainingRounds;
+
+        private Lease(Runnable task, long periodNanos, boolean periodic) {
+            this.task = task;
+            this.periodNanos = periodNanos;
+            this.periodic = periodic;
+            this.deadline = System.nanoTime() + periodNanos;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled.get()) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                //续期失败时等待下一个周期重试
+            } finally {
+                if (!periodic) {
+                    cancel();
+                } else if (!cancelled.get()) {
+                    deadline = System.nanoTime() + periodNanos;
+                    pending.add(this);
+                }
+            }
+        }
+
+        /**
+         * 取消租约,O(1)操作,槽位中的残留节点在下次经过时被丢弃
+         */
+        public void cancel() {
+            if (cancelled.compareAndSet(false, true)) {
+                leaseCount.decrementAndGet();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Micrometer的指标采集器,micrometer-core为可选依赖,使用时需自行引入
+ * <p>
+ * 按锁名称打标签,各个锁名称的meter在首次使用时创建并缓存;锁名称的数量超过上限后,
+ * 之后出现的锁名称统一使用标签值"_other",避免锁名称中含有业务id时标签基数无限增长
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/7 11:05 上午
+ */
+public class MicrometerLockMetrics implements LockMetrics {
+    /**
+     * 超出锁名称数量上限后使用的标签值
+     */
+    public static final String OVERFLOW_TAG = "_other";
+    /**
+     * 没有锁名称时(如连接异常)使用的标签值
+     */
+    public static final String NONE_TAG = "_none";
+    private static final int DEFAULT_MAX_LOCK_NAMES = 100;
+    private static final String PREFIX = "jedis.lock";
+    private MeterRegistry registry;
+    private int maxLockNames;
+    private boolean histogram;
+    private Map<String, LockMeters> meters = new ConcurrentHashMap<>(32);
+    /**
+     * 锁名称数量已达到上限
+     */
+    private volatile boolean full;
+    private LockMeters overflow;
+    private Counter noScript;
+    private Counter disconnect;
+    private Counter reconnect;
+
+    public MicrometerLockMetrics(MeterRegistry registry) {
+        this(registry, DEFAULT_MAX_LOCK_NAMES, true);
+    }
+
+    /**
+     * @param registry
+     * @param maxLockNames 单独打标签的锁名称数量上限
+     * @param histogram    是否发布耗时直方图,用于在监控系统中聚合计算任意分位数
+     */
+    public MicrometerLockMetrics(MeterRegistry registry, int maxLockNames, boolean histogram) {
+        if (maxLockNames < 0) {
+            throw new IllegalArgumentException("Parameter maxLockNames must be >= 0");
+        }
+        this.registry = Objects.requireNonNull(registry);
+        this.maxLockNames = maxLockNames;
+        this.histogram = histogram;
+        this.noScript = Counter.builder(PREFIX + ".noscript").description("evalsha fallbacks to eval")
+                .register(registry);
+        this.disconnect = Counter.builder(PREFIX + ".subscribe.disconnect").register(registry);
+        this.reconnect = Counter.builder(PREFIX + ".subscribe.reconnect").register(registry);
+    }
+
+    @Override
+    public void onAcquire(String name, long nanos, boolean acquired) {
+        LockMeters target = meters(name);
+        (acquired ? target.acquired : target.failed).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onWait(String name, long nanos) {
+        meters(name).wait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onRetry(String name) {
+        meters(name).retry.increment();
+    }
+
+    @Override
+    public void onRelease(String name, long nanos) {
+        meters(name).hold.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onRenew(String name, boolean success) {
+        Counter.builder(PREFIX + ".renew").tag("name", meters(name).tag).tag("result", success ? "success" :
+                "failure").register(registry).increment();
+    }
+
+    @Override
+    public void onMultiAcquire(String name, long nanos, boolean acquired) {
+        timer(PREFIX + ".multi.acquire", meters(name).tag, acquired).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onNoScript() {
+        noScript.increment();
+    }
+
+    @Override
+    public void onDisconnect() {
+        disconnect.increment();
+    }
+
+    @Override
+    public void onReconnect() {
+        reconnect.increment();
+    }
+
+    @Override
+    public void onError(String name, Throwable e) {
+        Counter.builder(PREFIX + ".errors").tag("name", Objects.isNull(name) ? NONE_TAG : meters(name).tag)
+                .tag("exception", e.getClass().getSimpleName()).register(registry).increment();
+    }
+
+    /**
+     * 返回锁名称对应的meter,超出数量上限时返回共享的meter
+     *
+     * @param name
+     * @return
+     */
+    private LockMeters meters(String name) {
+        String key = Objects.isNull(name) ? NONE_TAG : name;
+        LockMeters result = meters.get(key);
+        if (Objects.nonNull(result)) {
+            return result;
+        }
+        if (full) {
+            return overflow;
+        }
+        synchronized (this) {
+            result = meters.get(key);
+            if (Objects.nonNull(result)) {
+                return result;
+            }
+            if (meters.size() < maxLockNames) {
+                result = new LockMeters(key);
+                meters.put(key, result);
+                return result;
+            }
+            if (Objects.isNull(overflow)) {
+                overflow = new LockMeters(OVERFLOW_TAG);
+            }
+            full = true;
+            return overflow;
+        }
+    }
+
+    private Timer timer(String name, String tag, Boolean acquired) {
+        Timer.Builder builder = Timer.builder(name).tag("name", tag).publishPercentileHistogram(histogram);
+        if (Objects.nonNull(acquired)) {
+            builder.tag("result", acquired ? "acquired" : "failed");
+        }
+        return builder.register(registry);
+    }
+
+    /**
+     * 单个锁名称的高频meter
+     */
+    private class LockMeters {
+        private String tag;
+        private Timer acquired;
+        private Timer failed;
+        private Timer wait;
+        private Timer hold;
+        private Counter retry;
+
+        private LockMeters(String tag) {
+            this.tag = tag;
+            this.acquired = timer(PREFIX + ".acquire", tag, true);
+            this.failed = timer(PREFIX + ".acquire", tag, false);
+            this.wait = timer(PREFIX + ".wait", tag, null);
+            this.hold = timer(PREFIX + ".hold", tag, null);
+            this.retry = Counter.builder(PREFIX + ".retry").tag("name", tag).register(registry);
+        }
+    }
+}
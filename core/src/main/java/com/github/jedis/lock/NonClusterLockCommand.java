@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
  */
 public class NonClusterLockCommand implements LockCommand {
     private Pool pool;
+    private volatile LockMetrics metrics = LockMetrics.NOOP;
 
     protected NonClusterLockCommand(Pool pool) {
         this.pool = pool;
@@ -85,15 +86,53 @@ public class NonClusterLockCommand implements LockCommand {
         return null;
     }
 
+    @Override
+    public Object eval(byte[] script, int keyCount, byte[]... params) {
+        Jedis jedis = null;
+        try {
+            jedis = (Jedis) pool.getResource();
+            if (Objects.nonNull(jedis)) {
+                return jedis.eval(script, keyCount, params);
+            }
+        } finally {
+            if (Objects.nonNull(jedis)) {
+                jedis.close();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Object evalsha(byte[] sha, int keyCount, byte[]... params) {
+        Jedis jedis = null;
+        try {
+            jedis = (Jedis) pool.getResource();
+            if (Objects.nonNull(jedis)) {
+                return jedis.evalsha(sha, keyCount, params);
+            }
+        } finally {
+            if (Objects.nonNull(jedis)) {
+                jedis.close();//手动释放资源
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void setMetrics(LockMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
     @Override
     public void subscribe(Runnable callBack, JedisPubSub jedisPubSub, String... channels) {
-        while (true) {
+        while (!Thread.currentThread().isInterrupted()) {
             try {
                 Jedis jedis = null;
                 try {
                     jedis = (Jedis) pool.getResource();
                     if (Objects.nonNull(jedis)) {
                         jedis.subscribe(jedisPubSub, channels);
+                        return;//退订全部通道后退出
                     }
                 } finally {
                     if (Objects.nonNull(jedis)) {
@@ -101,11 +140,12 @@ public class NonClusterLockCommand implements LockCommand {
                     }
                 }
             } catch (JedisConnectionException e) {
+                metrics.onError(null, e);
                 callBack.run();
                 try {
                     TimeUnit.SECONDS.sleep(1);//断线重连
                 } catch (InterruptedException interruptedException) {
-                    //...
+                    Thread.currentThread().interrupt();
                 }
             }
         }
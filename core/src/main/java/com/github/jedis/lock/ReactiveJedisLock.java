@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.JedisLockException;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 基于Project Reactor的分布式锁,依赖reactor-core
+ * <p>
+ * 锁的持有者为取锁时返回的LockToken而不是线程,解锁时显式传入,因此取锁、解锁可以在不同线程中完成;
+ * 等待过程由解锁消息和时间轮定时器驱动,不占用工作线程。取锁在订阅时发起,取消订阅时放弃等待,
+ * 之后到达的取锁结果会立即释放
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/14 10:25 上午
+ */
+public class ReactiveJedisLock {
+    private final JedisLock lock;
+
+    protected ReactiveJedisLock(JedisLock lock) {
+        this.lock = Objects.requireNonNull(lock);
+    }
+
+    /**
+     * 获取锁,获取成功前一直等待
+     *
+     * @return
+     */
+    public Mono<LockToken> lock() {
+        return acquire(LockToken::lockAsync);
+    }
+
+    /**
+     * 尝试获取锁,获取失败时快速失败
+     *
+     * @return 获取失败时为空
+     */
+    public Mono<LockToken> tryLock() {
+        return acquire(token -> token.tryLockAsync(-1L, -1L, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 在waitTime内尝试获取锁
+     *
+     * @param waitTime
+     * @return 超时未获取时为空
+     */
+    public Mono<LockToken> tryLock(Duration waitTime) {
+        long wait = Objects.requireNonNull(waitTime).toMillis();
+        return acquire(token -> token.tryLockAsync(wait > 0 ? wait : -1L, -1L, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 在waitTime内尝试获取锁,成功后锁在leaseTime后自动失效,不会由watchdog续期
+     *
+     * @param waitTime
+     * @param leaseTime
+     * @return 超时未获取时为空
+     */
+    public Mono<LockToken> tryLock(Duration waitTime, Duration leaseTime) {
+        long wait = Objects.requireNonNull(waitTime).toMillis();
+        long lease = Objects.requireNonNull(leaseTime).toMillis();
+        if (lease < 1) {
+            return Mono.error(new IllegalArgumentException("Parameter leaseTime must be positive"));
+        }
+        return acquire(token -> token.tryLockAsync(Math.max(wait, 0L), lease, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 释放token对应的一次持有,可以在任意线程中调用
+     *
+     * @param token
+     * @return
+     */
+    public Mono<Void> unlock(LockToken token) {
+        Objects.requireNonNull(token);
+        if (token.getLock() != lock) {
+            return Mono.error(new JedisLockException(String.format("attempt to unlock lock, " +
+                    "token not issued by this lock: %s", token)));
+        }
+        return Mono.defer(() -> Mono.fromFuture(token.unlockAsync()));
+    }
+
+    /**
+     * 获取锁后执行action,action返回的Publisher终止、出错或被取消时释放锁
+     *
+     * @param action
+     * @param <T>
+     * @return
+     */
+    public <T> Flux<T> usingLock(Function<LockToken, ? extends Publisher<T>> action) {
+        Objects.requireNonNull(action);
+        return Flux.usingWhen(lock(), action, this::unlock);
+    }
+
+    /**
+     * 订阅时以新的LockToken发起取锁,取消订阅时取消取锁请求
+     *
+     * @param request 返回取锁结果,结果为false时表示未获取
+     * @return
+     */
+    private Mono<LockToken> acquire(Function<LockToken, CompletableFuture<?>> request) {
+        return Mono.defer(() -> {
+            LockToken token = new LockToken(lock);
+            CompletableFuture<?> future = request.apply(token);
+            return Mono.fromFuture(future).doOnCancel(() -> future.cancel(false))
+                    .then(Mono.fromSupplier(() -> Boolean.FALSE.equals(future.join()) ? null : token));
+        });
+    }
+}
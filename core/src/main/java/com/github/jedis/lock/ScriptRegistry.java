@@ -0,0 +1,236 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import com.github.jedis.exceptions.JedisLockException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lua脚本注册中心,同一个JedisLockManager下的所有锁共享
+ * <p>
+ * 脚本的sha1在本地计算,与redis中SCRIPT LOAD的结果一致,因此无需等待首次加载;
+ * 构造JedisLockManager时预加载到所有数据源,节点重启或主从切换导致脚本丢失时,
+ * 回退为eval执行,eval会同时将脚本重新缓存到该节点上
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/28 10:12 上午
+ */
+public class ScriptRegistry {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private Map<String, Script> scripts = new ConcurrentHashMap<>(32);
+    private volatile LockMetrics metrics = LockMetrics.NOOP;
+
+    protected ScriptRegistry() {
+        register(Constants.ACQUIRE_LOCK_SCRIPT);
+        register(Constants.ACQUIRE_UNLOCK_SCRIPT);
+        register(Constants.HANDOFF_UNLOCK_SCRIPT);
+        register(Constants.ACQUIRE_FORCE_UNLOCK_SCRIPT);
+        register(Constants.UPDATE_LOCK_TTL_SCRIPT);
+        register(Constants.FAIR_ACQUIRE_LOCK_SCRIPT);
+        register(Constants.FAIR_UNLOCK_SCRIPT);
+        register(Constants.FAIR_FORCE_UNLOCK_SCRIPT);
+        register(Constants.FAIR_CANCEL_ACQUIRE_SCRIPT);
+        register(Constants.RW_READ_LOCK_SCRIPT);
+        register(Constants.RW_WRITE_LOCK_SCRIPT);
+        register(Constants.RW_READ_UNLOCK_SCRIPT);
+        register(Constants.RW_WRITE_UNLOCK_SCRIPT);
+        register(Constants.RW_UPDATE_TTL_SCRIPT);
+        register(Constants.RW_FORCE_UNLOCK_SCRIPT);
+        register(Constants.SEMAPHORE_ACQUIRE_SCRIPT);
+        register(Constants.SEMAPHORE_RELEASE_SCRIPT);
+        register(Constants.SEMAPHORE_RENEW_SCRIPT);
+        register(Constants.SEMAPHORE_SET_PERMITS_SCRIPT);
+        register(Constants.SEMAPHORE_AVAILABLE_SCRIPT);
+        register(Constants.LATCH_TRY_SET_COUNT_SCRIPT);
+        register(Constants.LATCH_COUNT_DOWN_SCRIPT);
+        register(Constants.LATCH_GET_COUNT_SCRIPT);
+        register(Constants.BARRIER_TRY_SET_PARTIES_SCRIPT);
+        register(Constants.BARRIER_ARRIVE_SCRIPT);
+        register(Constants.BARRIER_CANCEL_SCRIPT);
+        register(Constants.BARRIER_STATE_SCRIPT);
+    }
+
+    /**
+     * 注册脚本并返回其sha1
+     *
+     * @param script
+     * @return
+     */
+    public String register(String script) {
+        return get(script).sha;
+    }
+
+    /**
+     * 将已注册的全部脚本预加载到目标数据源,加载失败时忽略,执行时会自动回退为eval
+     *
+     * @param client
+     */
+    protected void preload(LockCommand client) {
+        scripts.keySet().forEach(script -> {
+            try {
+                client.scriptLoad(script);
+            } catch (RuntimeException e) {
+                metrics.onError(null, e);
+            }
+        });
+    }
+
+    /**
+     * 执行脚本,优先使用evalsha,脚本未缓存时回退为eval
+     *
+     * @param client
+     * @param script
+     * @param keyCount
+     * @param params
+     * @return
+     */
+    protected Object eval(LockCommand client, String script, int keyCount, String... params) {
+        try {
+            return client.evalsha(register(script), keyCount, params);
+        } catch (JedisNoScriptException e) {
+            //节点重启或主从切换后脚本丢失,eval执行的同时会重新缓存脚本
+            metrics.onNoScript();
+            return client.eval(script, keyCount, params);
+        }
+    }
+
+    /**
+     * 执行脚本,参数为编码后的二进制形式,sha1和脚本内容同样使用缓存的编码结果
+     *
+     * @param client
+     * @param script
+     * @param keyCount
+     * @param params
+     * @return
+     */
+    protected Object eval(LockCommand client, String script, int keyCount, byte[]... params) {
+        Script target = get(script);
+        try {
+            return client.evalsha(target.shaBytes, keyCount, params);
+        } catch (JedisNoScriptException e) {
+            metrics.onNoScript();
+            return client.eval(target.bytes, keyCount, params);
+        }
+    }
+
+    /**
+     * 异步执行脚本,AsyncLockCommand使用原生异步的evalsha,脚本未缓存时回退为eval;
+     * 其他LockCommand在调用线程中同步执行后返回已完成的future
+     *
+     * @param client
+     * @param script
+     * @param keyCount
+     * @param params
+     * @return
+     */
+    protected CompletableFuture<Object> evalAsync(LockCommand client, String script, int keyCount,
+                                                  byte[]... params) {
+        if (!(client instanceof AsyncLockCommand)) {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            try {
+                result.complete(eval(client, script, keyCount, params));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+        AsyncLockCommand async = (AsyncLockCommand) client;
+        Script target = get(script);
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        async.evalshaAsync(target.shaBytes, keyCount, params).whenComplete((value, e) -> {
+            if (Objects.isNull(e)) {
+                result.complete(value);
+            } else if (unwrap(e) instanceof JedisNoScriptException) {
+                metrics.onNoScript();
+                async.evalAsync(target.bytes, keyCount, params).whenComplete((retry, error) -> {
+                    if (Objects.isNull(error)) {
+                        result.complete(retry);
+                    } else {
+                        result.completeExceptionally(unwrap(error));
+                    }
+                });
+            } else {
+                result.completeExceptionally(unwrap(e));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 设置指标采集器,由JedisLockManager#setMetrics统一设置
+     *
+     * @param metrics
+     */
+    protected void setMetrics(LockMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && Objects.nonNull(e.getCause()) ? e.getCause() : e;
+    }
+
+    private Script get(String script) {
+        Objects.requireNonNull(script);
+        Script result = scripts.get(script);
+        return Objects.nonNull(result) ? result : scripts.computeIfAbsent(script, Script::new);
+    }
+
+    /**
+     * 本地计算脚本的sha1
+     *
+     * @param script
+     * @return
+     */
+    protected static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            char[] result = new char[digest.length << 1];
+            for (int i = 0; i < digest.length; i++) {
+                result[i << 1] = HEX[(digest[i] >> 4) & 0xf];
+                result[(i << 1) + 1] = HEX[digest[i] & 0xf];
+            }
+            return new String(result);
+        } catch (NoSuchAlgorithmException e) {
+            throw new JedisLockException(e);
+        }
+    }
+
+    /**
+     * 脚本内容与sha1,同时缓存二者编码后的结果
+     */
+    private static class Script {
+        private String sha;
+        private byte[] shaBytes;
+        private byte[] bytes;
+
+        private Script(String script) {
+            this.sha = sha1(script);
+            this.shaBytes = SafeEncoder.encode(sha);
+            this.bytes = SafeEncoder.encode(script);
+        }
+    }
+}
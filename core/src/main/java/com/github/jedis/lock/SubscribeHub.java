@@ -0,0 +1,286 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 订阅复用中心,同一个redis数据源下的所有锁共享一条订阅连接
+ * <p>
+ * 通道按需动态SUBSCRIBE/UNSUBSCRIBE,收到的消息按通道路由至对应锁的SubscribeListener;
+ * 连接始终订阅一个内部通道,断线重连后由该通道的订阅回调重新订阅所有通道。
+ * 数据源为AsyncLockCommand时不占用订阅线程,通道的订阅及断线重连均由客户端异步完成
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/25 10:41 上午
+ */
+public class SubscribeHub extends JedisPubSub {
+    /**
+     * 内部保活通道
+     */
+    protected static final String HUB_CHANNEL = "__jedis_lock_hub__";
+    private LockCommand client;
+    /**
+     * 非阻塞客户端,为null时使用阻塞式订阅
+     */
+    private AsyncLockCommand async;
+    private Map<String, Route> routes = new ConcurrentHashMap<>(32);
+    /**
+     * 保护订阅状态,加锁期间会发送SUBSCRIBE/UNSUBSCRIBE命令,使用ReentrantLock避免虚拟线程在monitor上固定载体线程
+     */
+    private final ReentrantLock mainLock = new ReentrantLock();
+    private Thread worker;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private boolean listening;
+    /**
+     * 订阅连接是否断开过,用于区分首次连接和重连
+     */
+    private boolean disconnected;
+    private volatile LockMetrics metrics = LockMetrics.NOOP;
+
+    protected SubscribeHub(LockCommand client) {
+        this.client = client;
+        if (client instanceof AsyncLockCommand) {
+            this.async = (AsyncLockCommand) client;
+        }
+    }
+
+    /**
+     * 订阅目标通道,同一通道多次订阅仅发送一次SUBSCRIBE命令
+     *
+     * @param channel
+     * @param listener
+     */
+    public void subscribe(String channel, SubscribeListener listener) {
+        Objects.requireNonNull(channel);
+        Objects.requireNonNull(listener);
+        mainLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            Route route = routes.get(channel);
+            if (Objects.isNull(route)) {
+                route = new Route(listener);
+                routes.put(channel, route);
+                if (Objects.nonNull(async)) {
+                    subscribeAsync(channel, listener);
+                } else if (connected) {
+                    send(() -> super.subscribe(channel));
+                }
+            }
+            route.count++;
+            if (Objects.isNull(async) && Objects.isNull(worker)) {
+                worker = LockExecutors.newThread("jedis-lock-subscriber",
+                        () -> client.subscribe(this::disconnect, this, HUB_CHANNEL));
+                worker.start();
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 取消订阅目标通道,当通道上不再有订阅者时发送UNSUBSCRIBE命令
+     *
+     * @param channel
+     */
+    public void unsubscribe(String channel) {
+        mainLock.lock();
+        try {
+            Route route = routes.get(channel);
+            if (Objects.isNull(route) || --route.count > 0) {
+                return;
+            }
+            routes.remove(channel);
+            if (Objects.nonNull(async)) {
+                async.unsubscribeAsync(channel);
+            } else if (connected) {
+                send(() -> super.unsubscribe(channel));
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * 返回当前订阅的通道数量,不含内部通道
+     *
+     * @return
+     */
+    public int getChannelCount() {
+        return routes.size();
+    }
+
+    /**
+     * 设置指标采集器,由JedisLockManager#setMetrics统一设置
+     *
+     * @param metrics
+     */
+    protected void setMetrics(LockMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * 关闭订阅连接
+     */
+    public void close() {
+        mainLock.lock();
+        try {
+            closed = true;
+            if (listening) {
+                routes.keySet().forEach(async::unsubscribeAsync);
+            }
+            routes.clear();
+            if (connected) {
+                send(() -> super.unsubscribe());//退订全部通道后订阅循环退出
+            }
+            if (Objects.nonNull(worker)) {
+                worker.interrupt();
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+        Route route = routes.get(channel);
+        if (Objects.nonNull(route)) {
+            route.listener.onMessage(channel, message);
+        }
+    }
+
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+        if (!HUB_CHANNEL.equals(channel)) {
+            Route route = routes.get(channel);
+            if (Objects.nonNull(route)) {
+                route.listener.onSubscribed();
+            }
+            return;
+        }
+        boolean reconnected;
+        mainLock.lock();
+        try {
+            connected = true;
+            reconnected = disconnected;
+            disconnected = false;
+            if (closed) {
+                super.unsubscribe();
+                return;
+            }
+            if (!routes.isEmpty()) {
+                //(重)连接成功后补订所有通道
+                super.subscribe(routes.keySet().toArray(new String[0]));
+            }
+        } finally {
+            mainLock.unlock();
+        }
+        if (reconnected) {
+            metrics.onReconnect();
+        }
+        //断线期间的消息可能已丢失,唤醒等待者重新取锁
+        routes.values().forEach(route -> route.listener.onReconnect());
+    }
+
+    /**
+     * 异步订阅目标通道,首次订阅时建立订阅连接;调用方返回时订阅可能尚未生效,期间发布的消息会丢失,
+     * 因此redis确认订阅后唤醒该通道上的全部等待者重新取锁
+     *
+     * @param channel
+     * @param listener
+     */
+    private void subscribeAsync(String channel, SubscribeListener listener) {
+        if (!listening) {
+            async.listen(this::onMessage, this::disconnect, this::reconnect);
+            listening = true;
+        }
+        async.subscribeAsync(channel).whenComplete((v, e) -> {
+            if (Objects.isNull(e)) {
+                listener.onSubscribed();
+                listener.wake(Integer.MAX_VALUE);
+            } else {
+                metrics.onError(null, e);//等待者按ttl超时重试
+            }
+        });
+    }
+
+    /**
+     * 非阻塞客户端的重连回调,通道由客户端恢复订阅,断线期间的消息可能已丢失,唤醒等待者重新取锁
+     */
+    private void reconnect() {
+        mainLock.lock();
+        try {
+            disconnected = false;
+        } finally {
+            mainLock.unlock();
+        }
+        metrics.onReconnect();
+        routes.values().forEach(route -> route.listener.onReconnect());
+    }
+
+    /**
+     * 发送订阅相关命令,连接异常时忽略,重连成功后会补订所有通道
+     *
+     * @param command
+     */
+    private void send(Runnable command) {
+        try {
+            command.run();
+        } catch (RuntimeException e) {
+            metrics.onError(null, e);
+        }
+    }
+
+    /**
+     * 断线回调
+     */
+    private void disconnect() {
+        boolean lost;
+        mainLock.lock();
+        try {
+            connected = false;
+            lost = !disconnected;//阻塞式订阅重连失败时会反复回调
+            disconnected = true;
+        } finally {
+            mainLock.unlock();
+        }
+        if (lost) {
+            metrics.onDisconnect();
+        }
+        routes.values().forEach(route -> route.listener.onDisconnect());
+    }
+
+    /**
+     * 通道路由,count为当前通道上的订阅者数量
+     */
+    private static class Route {
+        private SubscribeListener listener;
+        private int count;
+
+        private Route(SubscribeListener listener) {
+            this.listener = listener;
+        }
+    }
+}
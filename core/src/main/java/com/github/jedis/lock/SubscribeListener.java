@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 订阅者实现
+ * <p>
+ * 等待者按到达顺序存放在无锁队列中,每收到一条消息仅唤醒队列前wakeCount个等待者,
+ * 被唤醒但未取到锁的等待者仍保留在原位置,下一条消息会再次优先唤醒它;
+ * 被唤醒的等待者尚未处理唤醒即退出(超时或取消)时,将唤醒移交给下一个未被唤醒的等待者,避免解锁消息丢失
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/8/3 6:07 下午
+ */
+public class SubscribeListener extends JedisPubSub {
+    private Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+    /**
+     * 每条消息唤醒的等待者数量
+     */
+    private int wakeCount;
+    /**
+     * 订阅连接断开时的回调
+     */
+    private Runnable callBack;
+
+    protected SubscribeListener(Runnable callBack) {
+        this(1, callBack);
+    }
+
+    protected SubscribeListener(int wakeCount, Runnable callBack) {
+        if (wakeCount < 1) {
+            throw new IllegalArgumentException("Parameter wakeCount must be > 0");
+        }
+        this.wakeCount = wakeCount;
+        this.callBack = callBack;
+    }
+
+    /**
+     * 当前线程加入等待队列
+     *
+     * @return
+     */
+    protected Waiter subscribe() {
+        Waiter waiter = new Waiter(Thread.currentThread(), null);
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * 异步等待者加入等待队列,被唤醒时回调signal而不是唤醒线程;signal在订阅线程中执行,不能阻塞
+     *
+     * @param signal
+     * @return
+     */
+    protected Waiter subscribe(Runnable signal) {
+        Waiter waiter = new Waiter(null, Objects.requireNonNull(signal));
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * 等待者退出等待队列
+     *
+     * @param waiter
+     */
+    protected void unsubscribe(Waiter waiter) {
+        if (waiters.remove(waiter) && waiter.signalled && wakeCount != Integer.MAX_VALUE) {
+            handOver();
+        }
+    }
+
+    /**
+     * 唤醒第一个未被唤醒的等待者,广播唤醒的订阅者无需移交
+     */
+    private void handOver() {
+        for (Waiter waiter : waiters) {
+            if (!waiter.signalled) {
+                waiter.wake();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 是否存在等待者
+     *
+     * @return
+     */
+    protected boolean hasWaiters() {
+        return !waiters.isEmpty();
+    }
+
+    @Override
+    public void onMessage(String channel, String message) {
+        wake(wakeCount);
+    }
+
+    /**
+     * 订阅连接重连成功后由SubscribeHub回调,断线期间的消息可能已丢失,唤醒全部等待者
+     */
+    protected void onReconnect() {
+        wake(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 目标通道订阅成功后由SubscribeHub回调;SUBSCRIBE为异步发送,生效之前发布的消息会丢失,
+     * 不依赖超时重试的等待者(如闭锁、栅栏)需要覆写此方法唤醒等待者重新检查状态
+     */
+    protected void onSubscribed() {
+        //...
+    }
+
+    /**
+     * 订阅连接断开时由SubscribeHub回调
+     */
+    protected void onDisconnect() {
+        if (Objects.nonNull(callBack)) {
+            callBack.run();
+        }
+    }
+
+    /**
+     * 按到达顺序唤醒前count个等待者
+     *
+     * @param count
+     */
+    protected void wake(int count) {
+        for (Waiter waiter : waiters) {
+            if (count-- <= 0) {
+                break;
+            }
+            waiter.wake();//唤醒等待的业务线程
+        }
+    }
+
+    /**
+     * 等待者,同步等待者唤醒挂起的线程,异步等待者回调signal
+     */
+    protected static class Waiter {
+        private final Thread thread;
+        private final Runnable signal;
+        /**
+         * 唤醒标记,等待期间线程可能在其他位置(如客户端等待响应)消费掉unpark许可,挂起前先检查此标记避免丢失唤醒;
+         * 退订时仍为true表示唤醒未被处理,需要移交给下一个等待者
+         */
+        private volatile boolean signalled;
+
+        private Waiter(Thread thread, Runnable signal) {
+            this.thread = thread;
+            this.signal = signal;
+        }
+
+        protected void wake() {
+            signalled = true;
+            if (Objects.nonNull(signal)) {
+                signal.run();
+                return;
+            }
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * 异步等待者开始处理唤醒(重新取锁)时清除唤醒标记
+         */
+        protected void clear() {
+            signalled = false;
+        }
+
+        /**
+         * 挂起当前线程,直到被唤醒、超时或中断
+         *
+         * @param blocker
+         * @param nanos   小于0时不超时
+         */
+        protected void park(Object blocker, long nanos) {
+            if (!signalled) {
+                if (nanos < 0) {
+                    LockSupport.park(blocker);
+                } else {
+                    LockSupport.parkNanos(blocker, nanos);
+                }
+            }
+            signalled = false;
+        }
+    }
+}
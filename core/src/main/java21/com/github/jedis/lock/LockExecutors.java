@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.lock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 执行阻塞路径的线程工厂,JDK21及以上版本的实现
+ * <p>
+ * 工作线程组为每个任务创建一个虚拟线程,等待锁时挂起的是虚拟线程而非平台线程,等待者数量不再受线程池大小限制
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/4 10:30 上午
+ */
+public class LockExecutors {
+    private LockExecutors() {
+    }
+
+    /**
+     * 创建工作线程组,每个任务一个虚拟线程
+     *
+     * @return
+     */
+    public static ExecutorService newWorkerGroup() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jedis-lock-worker-", 0).factory());
+    }
+
+    /**
+     * 创建异步线程组,每个任务一个虚拟线程
+     *
+     * @return
+     */
+    public static ExecutorService newAsyncGroup() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("jedis-lock-async-", 0).factory());
+    }
+
+    /**
+     * 创建未启动的虚拟线程,用于订阅循环等长时间阻塞的任务
+     *
+     * @param name
+     * @param task
+     * @return
+     */
+    public static Thread newThread(String name, Runnable task) {
+        return Thread.ofVirtual().name(name).unstarted(task);
+    }
+
+    /**
+     * 是否使用虚拟线程
+     *
+     * @return
+     */
+    public static boolean isVirtual() {
+        return true;
+    }
+}
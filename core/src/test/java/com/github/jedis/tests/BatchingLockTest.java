@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.lock.BatchingLockCommand;
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.LockCommand;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于BatchingLockCommand的重入锁测试,基于内置redis;两个JedisLockManager各自批量执行脚本,模拟两个JVM
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 3:00 下午
+ */
+public class BatchingLockTest {
+    private static EmbeddedRedis redis;
+    private LockCommand command;
+    private LockCommand otherCommand;
+    private JedisLockManager manager;
+    /**
+     * 另一个JVM中的锁管理器
+     */
+    private JedisLockManager other;
+    /**
+     * 由锁保护的计数,不使用任何同步手段
+     */
+    private volatile int count;
+
+    @BeforeClass
+    public static void start() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterClass
+    public static void stop() {
+        redis.close();
+    }
+
+    @Before
+    public void init() {
+        redis.flushAll();
+        command = new BatchingLockCommand(redis.getPool());
+        otherCommand = new BatchingLockCommand(redis.getPool(), 16, 1, 100, TimeUnit.MICROSECONDS);
+        manager = new JedisLockManager(command);
+        other = new JedisLockManager(otherCommand);
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        other.shutdown();
+        command.close();
+        otherCommand.close();
+    }
+
+    @Test
+    public void reentrant() {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        lock.lock();
+        Assert.assertTrue(lock.tryLock());//重入
+        lock.unlock();
+        Assert.assertFalse(remote.tryLock());
+        lock.unlock();
+        Assert.assertTrue(remote.tryLock());
+        remote.unlock();
+    }
+
+    @Test(timeout = 30000)
+    public void concurrent() throws Exception {
+        //多个线程的取锁、解锁请求合并为pipeline发送,结果仍分发给各自的调用线程
+        AtomicInteger holders = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            JedisLock lock = (i % 2 == 0 ? manager : other).getLock("mylock");
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < 50; j++) {
+                    Assert.assertTrue(lock.tryLock(5, TimeUnit.SECONDS));
+                    try {
+                        Assert.assertEquals(1, holders.incrementAndGet());//同一时刻只有一个持有者
+                        count++;
+                        holders.decrementAndGet();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }, task -> new Thread(task).start()));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(20, TimeUnit.SECONDS);
+        Assert.assertEquals(800, count);
+    }
+
+    @Test
+    public void scriptFlush() {
+        JedisLock lock = manager.getLock("mylock");
+        lock.lock();
+        try (Jedis jedis = redis.getPool().getResource()) {
+            jedis.scriptFlush();//批量执行的evalsha返回NOSCRIPT后重新加载
+        }
+        lock.unlock();
+        Assert.assertTrue(other.getLock("mylock").tryLock());
+        other.getLock("mylock").unlock();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.lock.JedisCountDownLatch;
+import com.github.jedis.lock.JedisLockManager;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 闭锁测试,基于内置redis;两个JedisLockManager连接同一个redis,模拟两个JVM
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 2:00 下午
+ */
+public class CountDownLatchTest {
+    private static EmbeddedRedis redis;
+    private JedisLockManager manager;
+    /**
+     * 另一个JVM中的锁管理器
+     */
+    private JedisLockManager other;
+
+    @BeforeClass
+    public static void start() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterClass
+    public static void stop() {
+        redis.close();
+    }
+
+    @Before
+    public void init() {
+        redis.flushAll();
+        manager = new JedisLockManager(redis.getPool());
+        other = new JedisLockManager(redis.getPool());
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        other.shutdown();
+    }
+
+    @Test
+    public void count() {
+        JedisCountDownLatch latch = manager.getCountDownLatch("mylatch");
+        Assert.assertTrue(latch.await(0, TimeUnit.MILLISECONDS));//计数不存在时无需等待
+        Assert.assertTrue(latch.trySetCount(2));
+        Assert.assertFalse(other.getCountDownLatch("mylatch").trySetCount(5));
+        other.getCountDownLatch("mylatch").countDown();
+        Assert.assertEquals(1L, latch.getCount());
+        Assert.assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+        latch.countDown();
+        Assert.assertEquals(0L, latch.getCount());
+        Assert.assertTrue(latch.trySetCount(1));//归零后可以重新设置
+    }
+
+    @Test(timeout = 10000)
+    public void await() throws Exception {
+        JedisCountDownLatch latch = manager.getCountDownLatch("mylatch");
+        latch.trySetCount(1);
+        JedisCountDownLatch remote = other.getCountDownLatch("mylatch");
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> remote.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> async = remote.awaitAsync(5, TimeUnit.SECONDS);
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assert.assertFalse(waiter.isDone() || async.isDone());
+        latch.countDown();//归零时唤醒所有等待者
+        Assert.assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(async.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void awaitAsyncTimeout() throws Exception {
+        JedisCountDownLatch latch = manager.getCountDownLatch("mylatch");
+        latch.trySetCount(1);
+        long startTime = System.nanoTime();
+        Assert.assertFalse(latch.awaitAsync(200, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) >= 200L);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.lock.JedisCyclicBarrier;
+import com.github.jedis.lock.JedisLockManager;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 栅栏测试,基于内置redis;两个JedisLockManager连接同一个redis,模拟两个JVM
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 2:30 下午
+ */
+public class CyclicBarrierTest {
+    private static EmbeddedRedis redis;
+    private JedisLockManager manager;
+    /**
+     * 另一个JVM中的锁管理器
+     */
+    private JedisLockManager other;
+
+    @BeforeClass
+    public static void start() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterClass
+    public static void stop() {
+        redis.close();
+    }
+
+    @Before
+    public void init() {
+        redis.flushAll();
+        manager = new JedisLockManager(redis.getPool());
+        other = new JedisLockManager(redis.getPool());
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        other.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void await() throws Exception {
+        JedisCyclicBarrier barrier = manager.getCyclicBarrier("mybarrier");
+        Assert.assertTrue(barrier.trySetParties(3));
+        Assert.assertFalse(other.getCyclicBarrier("mybarrier").trySetParties(5));
+        Assert.assertEquals(3, barrier.getParties());
+        for (int generation = 0; generation < 2; generation++) {
+            //每一代放行后自动重置,可以循环使用
+            CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> barrier.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Integer> second = other.getCyclicBarrier("mybarrier").awaitAsync(5, TimeUnit.SECONDS);
+            while (barrier.getNumberWaiting() < 2) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+            Assert.assertFalse(first.isDone() || second.isDone());
+            Assert.assertEquals(0, barrier.await());//最后一个到达者直接放行
+            Assert.assertEquals(new HashSet<>(Arrays.asList(1, 2)), new HashSet<>(Arrays.asList(
+                    first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS))));
+            Assert.assertEquals(0, barrier.getNumberWaiting());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void awaitTimeout() {
+        JedisCyclicBarrier barrier = manager.getCyclicBarrier("mybarrier");
+        barrier.trySetParties(2);
+        Assert.assertEquals(-1, barrier.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(0, barrier.getNumberWaiting());//超时后撤销本次到达
+        Assert.assertEquals(-1, other.getCyclicBarrier("mybarrier").await(200, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+
+/**
+ * 测试使用的redis节点,在本地随机端口启动内置的redis-server 2.8.19,不依赖外部环境
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 10:10 上午
+ */
+public class EmbeddedRedis implements AutoCloseable {
+    private RedisServer server;
+    private JedisPool pool;
+    private int port;
+
+    public EmbeddedRedis() {
+        port = freePort();
+        server = RedisServer.builder().port(port).setting("bind 127.0.0.1").setting("save \"\"").build();
+        server.start();
+        JedisPoolConfig config = new JedisPoolConfig();
+        config.setMaxTotal(64);
+        config.setMaxIdle(64);
+        pool = new JedisPool(config, "127.0.0.1", port);
+    }
+
+    public JedisPool getPool() {
+        return pool;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 清空数据,测试之间互不影响
+     */
+    public void flushAll() {
+        try (Jedis jedis = pool.getResource()) {
+            jedis.flushAll();
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+        server.stop();
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 公平锁测试,基于内置redis;每个等待者使用独立的JedisLockManager,模拟多个JVM在redis等待队列中排队
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 11:00 上午
+ */
+public class FairLockTest {
+    private static EmbeddedRedis redis;
+    private List<JedisLockManager> managers = new ArrayList<>();
+
+    @BeforeClass
+    public static void start() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterClass
+    public static void stop() {
+        redis.close();
+    }
+
+    @Before
+    public void init() {
+        redis.flushAll();
+        for (int i = 0; i < 4; i++) {
+            managers.add(new JedisLockManager(redis.getPool()));
+        }
+    }
+
+    @After
+    public void destroy() {
+        managers.forEach(JedisLockManager::shutdown);
+    }
+
+    @Test
+    public void reentrant() {
+        JedisLock lock = managers.get(0).getFairLock("mylock");
+        JedisLock remote = managers.get(1).getFairLock("mylock");
+        lock.lock();
+        Assert.assertTrue(lock.tryLock());//重入
+        lock.unlock();
+        Assert.assertFalse(remote.tryLock());
+        lock.unlock();
+        Assert.assertTrue(remote.tryLock());
+        remote.unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void fifo() throws Exception {
+        JedisLock lock = managers.get(0).getFairLock("mylock");
+        lock.lock();
+        Queue<Integer> order = new ConcurrentLinkedQueue<>();
+        CompletableFuture<Boolean> first = acquire(1, order);
+        TimeUnit.MILLISECONDS.sleep(200);
+        CompletableFuture<Boolean> second = acquire(2, order);
+        TimeUnit.MILLISECONDS.sleep(200);
+        //已有等待者排队时,新的尝试者不能插队
+        Assert.assertFalse(managers.get(3).getFairLock("mylock").tryLock());
+        lock.unlock();
+        Assert.assertTrue(first.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(second.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList(1, 2), new ArrayList<>(order));
+    }
+
+    @Test(timeout = 10000)
+    public void cancelWait() throws Exception {
+        JedisLock lock = managers.get(0).getFairLock("mylock");
+        lock.lock();
+        //超时的等待者退出队列,不阻塞之后的等待者
+        Assert.assertFalse(CompletableFuture.supplyAsync(() -> managers.get(1).getFairLock("mylock")
+                .tryLock(200, TimeUnit.MILLISECONDS)).get());
+        CompletableFuture<Boolean> waiter = acquire(2, new ConcurrentLinkedQueue<>());
+        TimeUnit.MILLISECONDS.sleep(100);
+        lock.unlock();
+        Assert.assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(managers.get(3).getFairLock("mylock").tryLock());
+        managers.get(3).getFairLock("mylock").unlock();
+    }
+
+    /**
+     * 在其他线程中通过指定的锁管理器限时获取公平锁,持有期间记录取锁顺序
+     *
+     * @param index
+     * @param order
+     * @return
+     */
+    private CompletableFuture<Boolean> acquire(int index, Queue<Integer> order) {
+        JedisLock lock = managers.get(index).getFairLock("mylock");
+        return CompletableFuture.supplyAsync(() -> {
+            if (!lock.tryLock(5, TimeUnit.SECONDS)) {
+                return false;
+            }
+            try {
+                order.add(index);
+                TimeUnit.MILLISECONDS.sleep(100);
+            } catch (InterruptedException e) {
+                //...
+            } finally {
+                lock.unlock();
+            }
+            return true;
+        });
+    }
+}
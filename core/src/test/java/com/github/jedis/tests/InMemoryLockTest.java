@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.exceptions.JedisLockException;
+import com.github.jedis.lock.Constants;
+import com.github.jedis.lock.InMemoryLockCommand;
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.LockOptions;
+import com.github.jedis.lock.LockToken;
+import com.github.jedis.lock.ReactiveJedisLock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于InMemoryLockCommand的重入锁测试,无需redis;两个JedisLockManager共享同一个数据源,模拟两个JVM
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/16 4:10 下午
+ */
+public class InMemoryLockTest {
+    private InMemoryLockCommand command;
+    private JedisLockManager manager;
+    /**
+     * 另一个JVM中的锁管理器,与manager之间不存在本地排队
+     */
+    private JedisLockManager other;
+
+    @Before
+    public void init() {
+        command = new InMemoryLockCommand();
+        manager = new JedisLockManager(command);
+        other = new JedisLockManager(command);
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        other.shutdown();
+        command.close();
+    }
+
+    @Test
+    public void reentrant() {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        lock.lock();
+        Assert.assertTrue(lock.tryLock());//重入
+        lock.unlock();
+        Assert.assertFalse(remote.tryLock());//仍持有一次
+        lock.unlock();
+        Assert.assertTrue(remote.tryLock());
+        remote.unlock();
+    }
+
+    @Test(expected = JedisLockException.class)
+    public void unlockNotHeld() {
+        manager.getLock("mylock").unlock();
+    }
+
+    @Test
+    public void shutdownShared() {
+        other.shutdown();//共享的InMemoryLockCommand不随manager关闭
+        JedisLock lock = manager.getLock("mylock");
+        Assert.assertTrue(lock.tryLock(0, 1, TimeUnit.SECONDS));
+        lock.unlock();
+    }
+
+    @Test
+    public void leaseExpire() throws InterruptedException {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        Assert.assertTrue(lock.tryLock(0, 200, TimeUnit.MILLISECONDS));
+        long pttl = (Long) command.eval(Constants.ACQUIRE_LOCK_SCRIPT, 1, "mylock", "probe", "1000");
+        Assert.assertTrue(pttl > 0 && pttl <= 200);
+        Assert.assertFalse(remote.tryLock());
+        TimeUnit.MILLISECONDS.sleep(400);//固定租期不由watchdog续期
+        Assert.assertTrue(remote.tryLock());
+        remote.unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void leaseExpireLocal() throws Exception {
+        JedisLock lock = manager.getLock("mylock");
+        Assert.assertTrue(lock.tryLock(0, 200, TimeUnit.MILLISECONDS));//不解锁
+        //租期结束后让出本地队首,同一JVM内的其他线程可以继续取锁
+        Assert.assertTrue(CompletableFuture.supplyAsync(() -> {
+            lock.lock();
+            lock.unlock();
+            return true;
+        }).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void leaseOptionsExpireLocal() throws Exception {
+        manager.setMaxLocks(1);
+        JedisLock lock = manager.getLock("mylock", LockOptions.builder()
+                .leaseTime(200, TimeUnit.MILLISECONDS).build());
+        lock.lock();//关闭watchdog,不解锁
+        Assert.assertFalse(CompletableFuture.supplyAsync(() -> lock.tryLock()).get());
+        TimeUnit.MILLISECONDS.sleep(400);
+        Assert.assertTrue(CompletableFuture.supplyAsync(() -> {
+            boolean result = lock.tryLock();
+            if (result) {
+                lock.unlock();
+            }
+            return result;
+        }).get());
+        manager.getLock("other");//到期后锁空闲,可以被淘汰
+        Assert.assertFalse(manager.getLocks().contains("mylock"));
+    }
+
+    @Test
+    public void watchDogRenew() throws InterruptedException {
+        JedisLock lock = manager.getLock("mylock", LockOptions.builder()
+                .watchDogTimeout(300, TimeUnit.MILLISECONDS).build());
+        JedisLock remote = other.getLock("mylock");
+        lock.lock();
+        TimeUnit.MILLISECONDS.sleep(900);
+        Assert.assertFalse(remote.tryLock());//超过过期时间后仍由watchdog续期
+        lock.unlock();
+        Assert.assertTrue(remote.tryLock());
+        remote.unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void unlockWakeUp() throws Exception {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        lock.lock();
+        CompletableFuture<Long> waiter = CompletableFuture.supplyAsync(() -> {
+            long startTime = System.nanoTime();
+            Assert.assertTrue(remote.tryLock(5, TimeUnit.SECONDS));
+            remote.unlock();
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        });
+        TimeUnit.MILLISECONDS.sleep(200);
+        lock.unlock();
+        //缺省过期时间为30秒,等待者由解锁消息唤醒
+        Assert.assertTrue(waiter.get(5, TimeUnit.SECONDS) < 2000L);
+    }
+
+    @Test(timeout = 10000)
+    public void localQueue() throws Exception {
+        JedisLock lock = manager.getLock("mylock");
+        CountDownLatch held = new CountDownLatch(1), release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                //...
+            }
+            lock.unlock();
+        });
+        holder.start();
+        held.await();
+        //本地等待者超时后不影响之后的等待者被唤醒
+        Assert.assertFalse(CompletableFuture.supplyAsync(() -> lock.tryLock(100, TimeUnit.MILLISECONDS)).get());
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            boolean result = lock.tryLock(5, TimeUnit.SECONDS);
+            if (result) {
+                lock.unlock();
+            }
+            return result;
+        });
+        TimeUnit.MILLISECONDS.sleep(100);
+        release.countDown();
+        Assert.assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        holder.join();
+        Assert.assertTrue(other.getLock("mylock").tryLock());
+        other.getLock("mylock").unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void localHandoff() throws Exception {
+        manager.setLocalHandoff(true);
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        CountDownLatch held = new CountDownLatch(1), release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            held.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                //...
+            }
+            lock.unlock();
+        });
+        holder.start();
+        held.await();
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread waiter = new Thread(() -> acquired.set(lock.tryLock(5000, 300, TimeUnit.MILLISECONDS)));
+        waiter.start();
+        TimeUnit.MILLISECONDS.sleep(100);
+        release.countDown();
+        waiter.join();
+        Assert.assertTrue(acquired.get());
+        Assert.assertFalse(remote.tryLock());//移交后由本地等待者持有
+        TimeUnit.MILLISECONDS.sleep(500);
+        Assert.assertTrue(remote.tryLock());//移交后重设为固定租期
+        remote.unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void lockAsync() throws Exception {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        remote.lock();
+        CompletableFuture<Void> future = lock.lockAsync();
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertFalse(future.isDone());
+        remote.unlock();
+        future.get(5, TimeUnit.SECONDS);
+        Assert.assertFalse(remote.tryLock());
+        lock.unlock();
+        Assert.assertTrue(remote.tryLock());
+        remote.unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void tryLockAsync() throws Exception {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        remote.lock();
+        Assert.assertFalse(lock.tryLockAsync().get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(lock.tryLockAsync(200, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> future = lock.tryLockAsync(5, 1, TimeUnit.SECONDS);
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertFalse(future.isDone());
+        remote.unlock();//由解锁消息唤醒
+        Assert.assertTrue(future.get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(remote.tryLock());
+        lock.unlock();
+        Assert.assertTrue(remote.tryLock());
+        remote.unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void reactiveTryLock() {
+        ReactiveJedisLock lock = manager.getReactiveLock("mylock");
+        LockToken token = lock.tryLock().block();
+        Assert.assertNotNull(token);
+        //持有者为LockToken而不是调用线程,同一线程内再次尝试失败
+        Assert.assertNull(lock.tryLock(Duration.ZERO).block());
+        Assert.assertNull(other.getReactiveLock("mylock").tryLock().block());
+        lock.unlock(token).block();
+        token = other.getReactiveLock("mylock").tryLock(Duration.ZERO).block();
+        Assert.assertNotNull(token);
+        other.getReactiveLock("mylock").unlock(token).block();
+    }
+
+    @Test(timeout = 10000)
+    public void lockAsyncCancel() throws Exception {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        remote.lock();
+        int leases = manager.getWatchDog().getLeaseCount();
+        CompletableFuture<Void> future = lock.lockAsync();
+        TimeUnit.MILLISECONDS.sleep(100);
+        Assert.assertTrue(future.cancel(false));
+        remote.unlock();
+        TimeUnit.MILLISECONDS.sleep(200);
+        //取消后不再取锁,也不残留watchdog租约
+        Assert.assertTrue(remote.tryLock());
+        remote.unlock();
+        Assert.assertTrue(manager.getWatchDog().getLeaseCount() <= leases);
+        Assert.assertTrue(lock.tryLock());
+        lock.unlock();
+    }
+}
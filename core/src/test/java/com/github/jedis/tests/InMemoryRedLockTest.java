@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.lock.InMemoryLockCommand;
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.LockCommand;
+import com.github.jedis.lock.LockToken;
+import com.github.jedis.lock.ReactiveJedisLock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于InMemoryLockCommand的红锁测试,5个数据源对应5个redis节点;单节点锁管理器用于直接占用或检查某个节点上的子锁
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/16 4:40 下午
+ */
+public class InMemoryRedLockTest {
+    private LockCommand[] commands = new LockCommand[5];
+    private JedisLockManager manager;
+    private List<JedisLockManager> nodes = new ArrayList<>();
+
+    @Before
+    public void init() {
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = new InMemoryLockCommand();
+            nodes.add(new JedisLockManager(commands[i]));
+        }
+        manager = new JedisLockManager(commands);
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        nodes.forEach(JedisLockManager::shutdown);
+        Arrays.stream(commands).forEach(LockCommand::close);
+    }
+
+    @Test
+    public void quorum() {
+        JedisLock lock = manager.getLock("mylock");
+        hold(0, 1);//少数节点被占用时仍然可以获取
+        Assert.assertTrue(lock.tryLock());
+        Assert.assertFalse(nodes.get(2).getLock("mylock").tryLock());
+        lock.unlock();
+        for (int i = 2; i < commands.length; i++) {
+            Assert.assertTrue(nodes.get(i).getLock("mylock").tryLock());
+        }
+    }
+
+    /**
+     * 判定失败之后才取锁成功的子锁异步释放,因此限时等待子锁空闲
+     */
+    @Test(timeout = 10000)
+    public void rollback() {
+        JedisLock lock = manager.getLock("mylock");
+        hold(0, 1, 2);
+        Assert.assertFalse(lock.tryLock());
+        //未达到法定数量时回滚已获取的子锁
+        Assert.assertTrue(nodes.get(3).getLock("mylock").tryLock(1, TimeUnit.SECONDS));
+        Assert.assertTrue(nodes.get(4).getLock("mylock").tryLock(1, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void tryLockWait() throws Exception {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock node = nodes.get(0).getLock("mylock");
+        hold(1, 2);
+        Assert.assertTrue(node.tryLock());
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> lock.tryLock(5, TimeUnit.SECONDS));
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assert.assertFalse(waiter.isDone());
+        node.unlock();//三个节点空闲后等待者达到法定数量
+        Assert.assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        Assert.assertFalse(nodes.get(0).getLock("mylock").tryLock());
+    }
+
+    @Test(timeout = 10000)
+    public void tryLockTimeout() {
+        JedisLock lock = manager.getLock("mylock");
+        hold(0, 1, 2);
+        long startTime = System.nanoTime();
+        Assert.assertFalse(lock.tryLock(500, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < 2000L);
+        Assert.assertTrue(nodes.get(3).getLock("mylock").tryLock(1, TimeUnit.SECONDS));
+        Assert.assertTrue(nodes.get(4).getLock("mylock").tryLock(1, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void token() {
+        ReactiveJedisLock lock = manager.getReactiveLock("mylock");
+        LockToken token = lock.tryLock(Duration.ofSeconds(1)).block();
+        Assert.assertNotNull(token);
+        Assert.assertNull(lock.tryLock().block());
+        lock.unlock(token).block();
+        Assert.assertTrue(nodes.get(0).getLock("mylock").tryLock());
+    }
+
+    /**
+     * 在目标节点上以单节点锁管理器占用子锁
+     *
+     * @param indexes
+     */
+    private void hold(int... indexes) {
+        for (int index : indexes) {
+            Assert.assertTrue(nodes.get(index).getLock("mylock").tryLock());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.JedisSemaphore;
+import com.github.jedis.lock.LettuceLockCommand;
+import com.github.jedis.lock.LockCommand;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于LettuceLockCommand的锁测试,基于内置redis;另一个JedisLockManager使用Jedis连接池,检查两种客户端之间的互斥及唤醒
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 3:30 下午
+ */
+public class LettuceLockTest {
+    private static EmbeddedRedis redis;
+    private RedisClient redisClient;
+    private LockCommand command;
+    private JedisLockManager manager;
+    /**
+     * 另一个JVM中基于Jedis的锁管理器
+     */
+    private JedisLockManager other;
+
+    @BeforeClass
+    public static void start() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterClass
+    public static void stop() {
+        redis.close();
+    }
+
+    @Before
+    public void init() {
+        redis.flushAll();
+        redisClient = RedisClient.create(RedisURI.create("127.0.0.1", redis.getPort()));
+        command = new LettuceLockCommand(redisClient);
+        manager = new JedisLockManager(command);
+        other = new JedisLockManager(redis.getPool());
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        other.shutdown();
+        command.close();
+        redisClient.shutdown();
+    }
+
+    @Test
+    public void reentrant() {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        lock.lock();
+        Assert.assertTrue(lock.tryLock());//重入
+        lock.unlock();
+        Assert.assertFalse(remote.tryLock());
+        lock.unlock();
+        Assert.assertTrue(remote.tryLock());
+        remote.unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void lockAsync() throws Exception {
+        JedisLock lock = manager.getLock("mylock");
+        JedisLock remote = other.getLock("mylock");
+        remote.lock();
+        CompletableFuture<Void> future = lock.lockAsync();
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assert.assertFalse(future.isDone());
+        long startTime = System.nanoTime();
+        remote.unlock();//由Lettuce的pub/sub连接收到解锁消息后唤醒
+        future.get(5, TimeUnit.SECONDS);
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) < 2000L);
+        Assert.assertFalse(remote.tryLock());
+        lock.unlock();
+    }
+
+    @Test
+    public void scriptFlush() {
+        JedisLock lock = manager.getLock("mylock");
+        lock.lock();
+        try (Jedis jedis = redis.getPool().getResource()) {
+            jedis.scriptFlush();//evalsha返回NOSCRIPT后回退为eval
+        }
+        lock.unlock();
+        Assert.assertTrue(other.getLock("mylock").tryLock());
+        other.getLock("mylock").unlock();
+    }
+
+    @Test
+    public void semaphore() {
+        //脚本返回值与Jedis保持一致
+        JedisSemaphore semaphore = manager.getSemaphore("mysemaphore");
+        Assert.assertTrue(semaphore.trySetPermits(2));
+        String leaseId = semaphore.tryAcquire(2);
+        Assert.assertNotNull(leaseId);
+        Assert.assertEquals(0, other.getSemaphore("mysemaphore").availablePermits());
+        semaphore.release(leaseId);
+        Assert.assertEquals(2, semaphore.availablePermits());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.exceptions.JedisLockException;
+import com.github.jedis.lock.DistributedLock;
+import com.github.jedis.lock.InMemoryLockCommand;
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.LockAspect;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Import;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 注解切面测试,锁名称的SpEL求值以及返回CompletionStage、Mono时的异步释放
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/16 5:30 下午
+ */
+public class LockAspectTest {
+    private static AnnotationConfigApplicationContext context;
+    private static OrderService service;
+    /**
+     * 另一个JVM中的锁管理器,用于检查切面是否持有锁
+     */
+    private static JedisLockManager other;
+    /**
+     * 目标方法的执行线程,service为代理对象,因此不能使用其字段
+     */
+    private static AtomicReference<String> thread = new AtomicReference<>();
+
+    @BeforeClass
+    public static void init() {
+        context = new AnnotationConfigApplicationContext(AspectConfiguration.class);
+        service = context.getBean(OrderService.class);
+        other = new JedisLockManager(context.getBean(InMemoryLockCommand.class));
+    }
+
+    @AfterClass
+    public static void destroy() {
+        other.shutdown();
+        context.close();
+    }
+
+    @Test
+    public void spel() {
+        Assert.assertTrue(service.pay("1001", 2));
+        Assert.assertTrue(other.getLock("order:1001:2").tryLock());//方法返回后释放
+        other.getLock("order:1001:2").unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void future() throws Exception {
+        CompletableFuture<String> stage = new CompletableFuture<>();
+        CompletableFuture<String> result = service.ship(stage);
+        while (thread.get() == null) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        //目标方法不在完成取锁的watchdog线程中执行
+        Assert.assertFalse(thread.get().startsWith("jedis-lock"));
+        JedisLock lock = other.getLock("ship");
+        Assert.assertFalse(lock.tryLock());//方法已返回,结果完成之前仍然持有
+        stage.complete("done");
+        Assert.assertEquals("done", result.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(lock.tryLock(5, TimeUnit.SECONDS));
+        lock.unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void tryLockFuture() throws Exception {
+        JedisLock lock = other.getLock("refund");
+        lock.lock();
+        try {
+            service.refund().get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof JedisLockException);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void mono() throws Exception {
+        CompletableFuture<String> stage = new CompletableFuture<>();
+        CompletableFuture<String> result = service.track(stage).toFuture();
+        JedisLock lock = other.getLock("track");
+        while (!stage.isDone() && lock.tryLock()) {
+            lock.unlock();//订阅后异步取锁
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        stage.complete("done");
+        Assert.assertEquals("done", result.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(lock.tryLock(5, TimeUnit.SECONDS));
+        lock.unlock();
+    }
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    @Import(LockAspect.class)
+    static class AspectConfiguration {
+        @Bean
+        public InMemoryLockCommand inMemoryLockCommand() {
+            return new InMemoryLockCommand();
+        }
+
+        @Bean
+        public JedisLockManager jedisLockManager() {
+            return new JedisLockManager(inMemoryLockCommand());
+        }
+
+        @Bean
+        public OrderService orderService() {
+            return new OrderService();
+        }
+    }
+
+    static class OrderService {
+        @DistributedLock(name = "order:#{#orderId}:#{#p1}")
+        public boolean pay(String orderId, int times) {
+            JedisLock lock = other.getLock(String.format("order:%s:%s", orderId, times));
+            return !lock.tryLock();
+        }
+
+        @DistributedLock(name = "ship")
+        public CompletableFuture<String> ship(CompletableFuture<String> stage) {
+            thread.set(Thread.currentThread().getName());
+            return stage;
+        }
+
+        @DistributedLock(name = "refund", type = DistributedLock.LockType.TRY_LOCK)
+        public CompletableFuture<String> refund() {
+            return CompletableFuture.completedFuture("done");
+        }
+
+        @DistributedLock(name = "track", leaseTime = 5, unit = TimeUnit.SECONDS)
+        public Mono<String> track(CompletableFuture<String> stage) {
+            return Mono.fromFuture(stage);
+        }
+    }
+}
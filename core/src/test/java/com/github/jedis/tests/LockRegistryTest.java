@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.lock.InMemoryLockCommand;
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁缓存的数量上限及空闲超时淘汰测试
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/16 5:05 下午
+ */
+public class LockRegistryTest {
+    private InMemoryLockCommand command;
+    private JedisLockManager manager;
+
+    @Before
+    public void init() {
+        command = new InMemoryLockCommand();
+        manager = new JedisLockManager(command);
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        command.close();
+    }
+
+    @Test
+    public void maxLocks() {
+        manager.setMaxLocks(10);
+        JedisLock held = manager.getLock("held");
+        held.lock();
+        try {
+            for (int i = 0; i < 100; i++) {
+                manager.getLock("mylock-" + i);
+            }
+            Assert.assertTrue(manager.getLocks().size() <= 10);
+            Assert.assertTrue(manager.getLocks().contains("held"));//持有中的锁不会被淘汰
+            Assert.assertSame(held, manager.getLock("held"));
+        } finally {
+            held.unlock();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void idleTimeout() throws InterruptedException {
+        manager.setIdleTimeout(100, TimeUnit.MILLISECONDS);
+        JedisLock held = manager.getLock("held");
+        held.lock();
+        try {
+            JedisLock idle = manager.getLock("idle");
+            Assert.assertTrue(idle.tryLock());
+            idle.unlock();
+            while (manager.getLocks().contains("idle")) {
+                TimeUnit.MILLISECONDS.sleep(50);
+            }
+            Assert.assertTrue(manager.getLocks().contains("held"));
+            Assert.assertSame(idle, manager.getLock("idle"));//仍被引用,淘汰后复用同一实例
+        } finally {
+            held.unlock();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void evictBeforeLock() {
+        manager.setMaxLocks(10);
+        JedisLock lock = manager.getLock("mylock");
+        for (int i = 0; i < 100; i++) {
+            manager.getLock("mylock-" + i);
+        }
+        Assert.assertFalse(manager.getLocks().contains("mylock"));//get之后、取锁之前被淘汰
+        lock.lock();
+        try {
+            JedisLock current = manager.getLock("mylock");
+            Assert.assertSame(lock, current);
+            Assert.assertTrue(current.tryLock());//同一线程可重入
+            current.unlock();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
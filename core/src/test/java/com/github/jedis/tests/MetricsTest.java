@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.lock.JedisLock;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.MicrometerLockMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+/**
+ * 基于Micrometer的指标采集测试,基于内置redis
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 4:00 下午
+ */
+public class MetricsTest {
+    private static EmbeddedRedis redis;
+    private SimpleMeterRegistry registry;
+    private JedisLockManager manager;
+    /**
+     * 另一个JVM中的锁管理器,不采集指标
+     */
+    private JedisLockManager other;
+
+    @BeforeClass
+    public static void start() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterClass
+    public static void stop() {
+        redis.close();
+    }
+
+    @Before
+    public void init() {
+        redis.flushAll();
+        registry = new SimpleMeterRegistry();
+        manager = new JedisLockManager(redis.getPool());
+        manager.setMetrics(new MicrometerLockMetrics(registry, 1, false));
+        other = new JedisLockManager(redis.getPool());
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        other.shutdown();
+        registry.close();
+    }
+
+    @Test
+    public void acquire() {
+        JedisLock lock = manager.getLock("mylock");
+        lock.lock();
+        lock.unlock();
+        other.getLock("mylock").lock();
+        Assert.assertFalse(lock.tryLock());
+        other.getLock("mylock").unlock();
+        Assert.assertEquals(1L, registry.get("jedis.lock.acquire").tag("name", "mylock")
+                .tag("result", "acquired").timer().count());
+        Assert.assertEquals(1L, registry.get("jedis.lock.acquire").tag("name", "mylock")
+                .tag("result", "failed").timer().count());
+        Assert.assertEquals(1L, registry.get("jedis.lock.hold").tag("name", "mylock").timer().count());
+    }
+
+    @Test
+    public void overflow() {
+        manager.getLock("mylock").lock();
+        manager.getLock("mylock").unlock();
+        JedisLock lock = manager.getLock("other");
+        lock.lock();
+        lock.unlock();
+        //超出锁名称数量上限后归入共享标签,标签数量不随锁名称增长
+        Assert.assertEquals(1L, registry.get("jedis.lock.acquire").tag("name", MicrometerLockMetrics.OVERFLOW_TAG)
+                .tag("result", "acquired").timer().count());
+        Assert.assertNull(registry.find("jedis.lock.acquire").tag("name", "other").timer());
+    }
+
+    @Test
+    public void noScript() {
+        JedisLock lock = manager.getLock("mylock");
+        lock.lock();
+        try (Jedis jedis = redis.getPool().getResource()) {
+            jedis.scriptFlush();
+        }
+        lock.unlock();//evalsha返回NOSCRIPT后回退为eval
+        Assert.assertTrue(registry.get("jedis.lock.noscript").counter().count() >= 1.0D);
+    }
+}
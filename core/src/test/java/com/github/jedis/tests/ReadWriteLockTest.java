@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.JedisReadWriteLock;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读写锁测试,基于内置redis;两个JedisLockManager连接同一个redis,模拟两个JVM
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 10:30 上午
+ */
+public class ReadWriteLockTest {
+    private static EmbeddedRedis redis;
+    private JedisLockManager manager;
+    /**
+     * 另一个JVM中的锁管理器
+     */
+    private JedisLockManager other;
+
+    @BeforeClass
+    public static void start() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterClass
+    public static void stop() {
+        redis.close();
+    }
+
+    @Before
+    public void init() {
+        redis.flushAll();
+        manager = new JedisLockManager(redis.getPool());
+        other = new JedisLockManager(redis.getPool());
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        other.shutdown();
+    }
+
+    @Test
+    public void sharedRead() {
+        JedisReadWriteLock lock = manager.getReadWriteLock("mylock");
+        JedisReadWriteLock remote = other.getReadWriteLock("mylock");
+        lock.readLock().lock();
+        Assert.assertTrue(remote.readLock().tryLock());//读锁之间共享
+        Assert.assertFalse(remote.writeLock().tryLock());
+        remote.readLock().unlock();
+        Assert.assertFalse(remote.writeLock().tryLock());//仍有一个读锁持有者
+        lock.readLock().unlock();
+        Assert.assertTrue(remote.writeLock().tryLock());
+        remote.writeLock().unlock();
+    }
+
+    @Test
+    public void writeExclusion() {
+        JedisReadWriteLock lock = manager.getReadWriteLock("mylock");
+        JedisReadWriteLock remote = other.getReadWriteLock("mylock");
+        lock.writeLock().lock();
+        Assert.assertTrue(lock.writeLock().tryLock());//重入
+        Assert.assertFalse(remote.writeLock().tryLock());
+        Assert.assertFalse(remote.readLock().tryLock());
+        lock.writeLock().unlock();
+        Assert.assertFalse(remote.readLock().tryLock());//仍持有一次
+        lock.writeLock().unlock();
+        Assert.assertTrue(remote.writeLock().tryLock());
+        remote.writeLock().unlock();
+    }
+
+    @Test
+    public void downgrade() {
+        JedisReadWriteLock lock = manager.getReadWriteLock("mylock");
+        JedisReadWriteLock remote = other.getReadWriteLock("mylock");
+        lock.writeLock().lock();
+        Assert.assertTrue(lock.readLock().tryLock());//持有写锁时可以获取读锁
+        lock.writeLock().unlock();
+        //降级为读锁后其他读者可以进入,写者仍被阻塞
+        Assert.assertTrue(remote.readLock().tryLock());
+        Assert.assertFalse(remote.writeLock().tryLock());
+        remote.readLock().unlock();
+        lock.readLock().unlock();
+        Assert.assertTrue(remote.writeLock().tryLock());
+        remote.writeLock().unlock();
+    }
+
+    @Test(timeout = 10000)
+    public void wakeAll() throws Exception {
+        JedisReadWriteLock lock = manager.getReadWriteLock("mylock");
+        lock.writeLock().lock();
+        //同一通道上的两个读者在写锁释放后都被唤醒
+        CompletableFuture<Long> first = read(other.getReadWriteLock("mylock"));
+        CompletableFuture<Long> second = read(other.getReadWriteLock("mylock"));
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assert.assertFalse(first.isDone() || second.isDone());
+        lock.writeLock().unlock();
+        //缺省过期时间为30秒,等待者由解锁消息唤醒
+        Assert.assertTrue(first.get(5, TimeUnit.SECONDS) < 2000L);
+        Assert.assertTrue(second.get(5, TimeUnit.SECONDS) < 2000L);
+    }
+
+    /**
+     * 在其他线程中限时获取读锁,同时持有后释放,返回等待时间
+     *
+     * @param lock
+     * @return
+     */
+    private CompletableFuture<Long> read(JedisReadWriteLock lock) {
+        return CompletableFuture.supplyAsync(() -> {
+            long startTime = System.nanoTime();
+            Assert.assertTrue(lock.readLock().tryLock(5, TimeUnit.SECONDS));
+            long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            try {
+                TimeUnit.MILLISECONDS.sleep(300);//两个读者同时持有
+            } catch (InterruptedException e) {
+                //...
+            } finally {
+                lock.readLock().unlock();
+            }
+            return time;
+        });
+    }
+}
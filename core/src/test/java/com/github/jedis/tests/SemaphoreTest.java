@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019-2119 gao_xianglong@sina.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jedis.tests;
+
+import com.github.jedis.exceptions.JedisLockException;
+import com.github.jedis.lock.JedisLockManager;
+import com.github.jedis.lock.JedisSemaphore;
+import com.github.jedis.lock.LockOptions;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 信号量测试,基于内置redis;两个JedisLockManager连接同一个redis,模拟两个JVM
+ *
+ * @author gao_xianglong@sina.com
+ * @version 0.1-SNAPSHOT
+ * @date created in 2020/9/17 11:30 上午
+ */
+public class SemaphoreTest {
+    private static EmbeddedRedis redis;
+    private JedisLockManager manager;
+    /**
+     * 另一个JVM中的锁管理器
+     */
+    private JedisLockManager other;
+
+    @BeforeClass
+    public static void start() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterClass
+    public static void stop() {
+        redis.close();
+    }
+
+    @Before
+    public void init() {
+        redis.flushAll();
+        manager = new JedisLockManager(redis.getPool());
+        other = new JedisLockManager(redis.getPool());
+    }
+
+    @After
+    public void destroy() {
+        manager.shutdown();
+        other.shutdown();
+    }
+
+    @Test
+    public void permits() {
+        JedisSemaphore semaphore = manager.getSemaphore("mysemaphore");
+        JedisSemaphore remote = other.getSemaphore("mysemaphore");
+        Assert.assertNull(semaphore.tryAcquire(1));//未设置许可总数时为0
+        Assert.assertTrue(semaphore.trySetPermits(3));
+        Assert.assertFalse(remote.trySetPermits(5));//仅在未设置过时生效
+        String leaseId = semaphore.tryAcquire(2);
+        Assert.assertNotNull(leaseId);
+        Assert.assertEquals(1, remote.availablePermits());
+        Assert.assertNull(remote.tryAcquire(2));
+        String remoteId = remote.tryAcquire(1);
+        Assert.assertNotNull(remoteId);
+        semaphore.release(leaseId);
+        Assert.assertEquals(2, remote.availablePermits());
+        remote.addPermits(-2);
+        Assert.assertEquals(0, semaphore.availablePermits());
+        remote.release(remoteId);
+        Assert.assertEquals(1, semaphore.availablePermits());
+    }
+
+    @Test(expected = JedisLockException.class)
+    public void releaseNotHeld() {
+        JedisSemaphore semaphore = manager.getSemaphore("mysemaphore");
+        semaphore.trySetPermits(1);
+        semaphore.release(semaphore.tryAcquire(1));
+        semaphore.release("none");
+    }
+
+    @Test(timeout = 10000)
+    public void leaseExpire() throws InterruptedException {
+        JedisSemaphore semaphore = manager.getSemaphore("mysemaphore", LockOptions.builder()
+                .leaseTime(200, TimeUnit.MILLISECONDS).build());
+        JedisSemaphore remote = other.getSemaphore("mysemaphore");
+        semaphore.trySetPermits(1);
+        Assert.assertNotNull(semaphore.tryAcquire(1));//不归还
+        Assert.assertNull(remote.tryAcquire(1));
+        TimeUnit.MILLISECONDS.sleep(400);//租约过期后许可自动归还
+        Assert.assertNotNull(remote.tryAcquire(1));
+    }
+
+    @Test(timeout = 10000)
+    public void releaseWakeUp() throws Exception {
+        JedisSemaphore semaphore = manager.getSemaphore("mysemaphore");
+        semaphore.trySetPermits(2);
+        String leaseId = semaphore.tryAcquire(2);
+        //归还2个许可后两个等待者均被唤醒
+        CompletableFuture<Long> first = acquire(other.getSemaphore("mysemaphore"));
+        CompletableFuture<Long> second = acquire(other.getSemaphore("mysemaphore"));
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assert.assertFalse(first.isDone() || second.isDone());
+        semaphore.release(leaseId);
+        //缺省租期为30秒,等待者由归还消息唤醒
+        Assert.assertTrue(first.get(5, TimeUnit.SECONDS) < 2000L);
+        Assert.assertTrue(second.get(5, TimeUnit.SECONDS) < 2000L);
+        Assert.assertEquals(0, semaphore.availablePermits());
+    }
+
+    /**
+     * 在其他线程中限时获取1个许可且不归还,返回等待时间
+     *
+     * @param semaphore
+     * @return
+     */
+    private CompletableFuture<Long> acquire(JedisSemaphore semaphore) {
+        return CompletableFuture.supplyAsync(() -> {
+            long startTime = System.nanoTime();
+            Assert.assertNotNull(semaphore.tryAcquire(1, 5, TimeUnit.SECONDS));
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        });
+    }
+}